@@ -2,6 +2,7 @@ package com.example.demo;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
@@ -12,6 +13,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import com.example.demo.security.CalibratedBCryptPasswordEncoder;
+
 
 @EnableJpaRepositories("com.example.demo.model.persistence.repositories")
 @EntityScan("com.example.demo.model.persistence")
@@ -24,9 +27,20 @@ public class SareetaApplication  extends SpringBootServletInitializer {
 		SpringApplication.run(SareetaApplication.class, args);
 	}
 
+	/**
+	 * Uses {@code security.bcrypt.strength} if set, otherwise the strength whose hash takes about
+	 * {@code security.bcrypt.target-millis} on this machine.
+	 */
 	@Bean
-	public BCryptPasswordEncoder bCryptPasswordEncoder() {
-		return new BCryptPasswordEncoder();
+	public BCryptPasswordEncoder bCryptPasswordEncoder(@Value("${security.bcrypt.strength:0}") int strength,
+			@Value("${security.bcrypt.target-millis:100}") long targetMillis,
+			@Value("${security.bcrypt.min-strength:10}") int minStrength,
+			@Value("${security.bcrypt.max-strength:16}") int maxStrength) {
+		if (strength <= 0) {
+			strength = CalibratedBCryptPasswordEncoder.calibrate(targetMillis, minStrength, maxStrength);
+			logger.info("[SareetaApplication] Calibrated BCrypt strength " + strength + " for a target of " + targetMillis + "ms");
+		}
+		return new CalibratedBCryptPasswordEncoder(strength);
 	}
 
 	@Override
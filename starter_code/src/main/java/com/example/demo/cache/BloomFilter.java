@@ -0,0 +1,102 @@
+package com.example.demo.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size Bloom filter over strings. {@link #mightContain(String)} never misses a key that was
+ * added, and answers false for most keys that were not, using a few bit probes. Keys are hashed
+ * char by char and may be given as a prefix and a rest, which hash like their concatenation, so
+ * neither adding nor checking allocates. Keys cannot be removed; rebuild the filter to drop them.
+ * <p>
+ * Safe for concurrent use: adding only ever sets bits.
+ */
+public class BloomFilter {
+
+	private static final double LN2 = Math.log(2);
+
+	private final AtomicLongArray bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	/**
+	 * Sizes the filter so that with {@code expectedKeys} keys added, about {@code falsePositiveRate}
+	 * of the keys not added are still reported as possibly present.
+	 */
+	public BloomFilter(int expectedKeys, double falsePositiveRate) {
+		int keys = Math.max(1, expectedKeys);
+		long optimalBits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (LN2 * LN2));
+		int words = (int) Math.max(1, (optimalBits + 63) / 64);
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = words * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * LN2));
+	}
+
+	public void add(String key) {
+		add("", key);
+	}
+
+	/**
+	 * Adds the concatenation of {@code prefix} and {@code key} without building it.
+	 */
+	public void add(String prefix, String key) {
+		long hash = hash(prefix, key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = index(h1 + i * h2);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			do {
+				current = bits.get(word);
+			} while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+		}
+	}
+
+	public boolean mightContain(String key) {
+		return mightContain("", key);
+	}
+
+	/**
+	 * Checks the concatenation of {@code prefix} and {@code key} without building it.
+	 */
+	public boolean mightContain(String prefix, String key) {
+		long hash = hash(prefix, key);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashCount; i++) {
+			long bit = index(h1 + i * h2);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long index(int combinedHash) {
+		return (combinedHash & 0x7fffffffL) % bitCount;
+	}
+
+	/** 64-bit FNV-1a over both bytes of every char, finished with the MurmurHash3 mixer. */
+	private static long hash(String prefix, String key) {
+		long h = fnv1a(0xcbf29ce484222325L, prefix);
+		h = fnv1a(h, key);
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long fnv1a(long h, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			h ^= c & 0xff;
+			h *= 0x100000001b3L;
+			h ^= c >>> 8;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,172 @@
+package com.example.demo.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-process cache bounded by size and time-to-live.
+ * Entries are spread over independently locked LRU segments so that concurrent readers
+ * of different keys rarely contend; each segment evicts its least recently used entry
+ * once it is full, and expired entries are dropped lazily on access.
+ */
+public class BoundedCache<K, V> {
+
+	private static final int SEGMENTS = 16;
+
+	private final String name;
+	private final long ttlNanos;
+	private final Segment<K, V>[] segments;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	@SuppressWarnings("unchecked")
+	public BoundedCache(String name, int maxSize, long ttl, TimeUnit unit) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+		this.name = name;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.segments = new Segment[SEGMENTS];
+		int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment<>(segmentSize, evictions);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public V get(K key) {
+		V value = segmentFor(key).get(key, System.nanoTime());
+		if (value == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the cached value for the key, loading and caching it on a miss.
+	 * A loader returning null is not cached.
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		V value = get(key);
+		if (value == null) {
+			value = loader.apply(key);
+			if (value != null) {
+				put(key, value);
+			}
+		}
+		return value;
+	}
+
+	public void put(K key, V value) {
+		segmentFor(key).put(key, value, System.nanoTime() + ttlNanos);
+	}
+
+	/**
+	 * Caches the value until the given wall-clock time, or the cache TTL, whichever comes first.
+	 */
+	public void put(K key, V value, long expiresAtMillis) {
+		long now = System.nanoTime();
+		long remaining = TimeUnit.MILLISECONDS.toNanos(expiresAtMillis - System.currentTimeMillis());
+		if (remaining <= 0) {
+			return;
+		}
+		segmentFor(key).put(key, value, now + Math.min(remaining, ttlNanos));
+	}
+
+	public void invalidate(K key) {
+		segmentFor(key).remove(key);
+	}
+
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public CacheStats stats() {
+		return new CacheStats(name, size(), hits.sum(), misses.sum(), evictions.sum());
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long expiresAtNanos;
+
+		Entry(V value, long expiresAtNanos) {
+			this.value = value;
+			this.expiresAtNanos = expiresAtNanos;
+		}
+
+		boolean isExpired(long now) {
+			return now - expiresAtNanos >= 0;
+		}
+	}
+
+	private static final class Segment<K, V> {
+		private final LinkedHashMap<K, Entry<V>> map;
+
+		Segment(final int maxSize, final LongAdder evictions) {
+			this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+					if (size() > maxSize) {
+						evictions.increment();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized V get(K key, long now) {
+			Entry<V> entry = map.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.isExpired(now)) {
+				map.remove(key);
+				return null;
+			}
+			return entry.value;
+		}
+
+		synchronized void put(K key, V value, long expiresAtNanos) {
+			map.put(key, new Entry<>(value, expiresAtNanos));
+		}
+
+		synchronized void remove(K key) {
+			map.remove(key);
+		}
+
+		synchronized void clear() {
+			map.clear();
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+	}
+}
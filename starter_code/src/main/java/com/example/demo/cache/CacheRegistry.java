@@ -0,0 +1,27 @@
+package com.example.demo.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the application's in-process caches and keeps track of them for metrics.
+ */
+@Component
+public class CacheRegistry {
+
+	private final List<BoundedCache<?, ?>> caches = new CopyOnWriteArrayList<>();
+
+	public <K, V> BoundedCache<K, V> create(String name, int maxSize, long ttl, TimeUnit unit) {
+		BoundedCache<K, V> cache = new BoundedCache<>(name, maxSize, ttl, unit);
+		caches.add(cache);
+		return cache;
+	}
+
+	public List<CacheStats> stats() {
+		return caches.stream().map(BoundedCache::stats).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,29 @@
+package com.example.demo.cache;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class CacheStats {
+
+	@JsonProperty
+	private final String name;
+
+	@JsonProperty
+	private final int size;
+
+	@JsonProperty
+	private final long hits;
+
+	@JsonProperty
+	private final long misses;
+
+	@JsonProperty
+	private final long evictions;
+
+	@JsonProperty
+	public double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0.0 : (double) hits / requests;
+	}
+}
@@ -1,41 +1,63 @@
 package com.example.demo.controllers;
 
 import com.example.demo.SareetaApplication;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.IntStream;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BatchModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
+import com.example.demo.model.responses.ItemBatch;
+import com.example.demo.services.CartService;
+import com.example.demo.services.ItemCatalog;
+import com.example.demo.services.UserCache;
 
 @RestController
 @RequestMapping("/api/cart")
 public class CartController {
 	
 	@Autowired
-	private UserRepository userRepository;
+	private UserCache userCache;
 	
 	@Autowired
-	private CartRepository cartRepository;
+	private CartService cartService;
 	
 	@Autowired
 	private ItemRepository itemRepository;
+
+	@Autowired
+	private ItemCatalog itemCatalog;
+
+	@Value("${cart.batch.max-operations:200}")
+	private int maxBatchOperations;
 	
 	@PostMapping("/addToCart")
-	public ResponseEntity<Cart> addTocart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
+	public ResponseEntity<CartResponse> addTocart(@RequestBody ModifyCartRequest request,
+			@RequestParam(defaultValue = "false") boolean delta) {
+		if(request.getQuantity() < 1) {
+			return ResponseEntity.badRequest().build();
+		}
+		User user = userCache.findByUsername(request.getUsername());
 		if(user == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
@@ -43,17 +65,18 @@ public class CartController {
 		if(!item.isPresent()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.addItem(item.get()));
-		cartRepository.save(cart);
+		CartResponse cart = modify(user, delta, c -> c.addItem(item.get(), request.getQuantity()));
 		SareetaApplication.logger.info("[CartController] Successfully saved cart for user "+ user.getUsername());
 		return ResponseEntity.ok(cart);
 	}
 	
 	@PostMapping("/removeFromCart")
-	public ResponseEntity<Cart> removeFromcart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
+	public ResponseEntity<CartResponse> removeFromcart(@RequestBody ModifyCartRequest request,
+			@RequestParam(defaultValue = "false") boolean delta) {
+		if(request.getQuantity() < 1) {
+			return ResponseEntity.badRequest().build();
+		}
+		User user = userCache.findByUsername(request.getUsername());
 		if(user == null) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
@@ -61,12 +84,76 @@ public class CartController {
 		if(!item.isPresent()) {
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.removeItem(item.get()));
-		cartRepository.save(cart);
+		CartResponse cart = modify(user, delta, c -> c.removeItem(item.get(), request.getQuantity()));
 		SareetaApplication.logger.info("[CartController] Successfully saved cart for user "+ user.getUsername());
 		return ResponseEntity.ok(cart);
 	}
+
+	/**
+	 * Applies all operations in order as one cart update: either every operation is applied
+	 * and saved together, or the request is rejected without touching the cart.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<CartResponse> modifyCart(@RequestBody BatchModifyCartRequest request,
+			@RequestParam(defaultValue = "false") boolean delta) {
+		List<CartOperation> operations = request.getOperations();
+		if(operations == null || operations.isEmpty() || operations.size() > maxBatchOperations) {
+			return ResponseEntity.badRequest().build();
+		}
+		for(CartOperation operation : operations) {
+			if(operation.getType() == null || operation.getQuantity() < 0
+					|| (operation.getType() != CartOperation.Type.SET && operation.getQuantity() < 1)) {
+				return ResponseEntity.badRequest().build();
+			}
+		}
+		User user = userCache.findByUsername(request.getUsername());
+		if(user == null) {
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		ItemBatch items = itemCatalog.findAllById(operations.stream()
+				.map(CartOperation::getItemId).distinct().collect(Collectors.toList()));
+		if(!items.getMissingIds().isEmpty()) {
+			SareetaApplication.logger.warn("[CartController] Unknown items "+ items.getMissingIds() +" in batch for user "+ user.getUsername());
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Map<Long, Item> itemsById = new HashMap<>();
+		items.getItems().forEach(item -> itemsById.put(item.getId(), item));
+		CartResponse cart = modify(user, delta, c -> {
+			for(CartOperation operation : operations) {
+				Item item = itemsById.get(operation.getItemId());
+				switch(operation.getType()) {
+				case ADD:
+					c.addItem(item, operation.getQuantity());
+					break;
+				case REMOVE:
+					c.removeItem(item, operation.getQuantity());
+					break;
+				case SET:
+					c.setQuantity(item, operation.getQuantity());
+					break;
+				}
+			}
+		});
+		SareetaApplication.logger.info("[CartController] Successfully applied "+ operations.size() +" operations to cart for user "+ user.getUsername());
+		return ResponseEntity.ok(cart);
+	}
+
+	/**
+	 * Applies the mutation and renders the result, either in full or, with {@code delta},
+	 * as just the lines the mutation changed.
+	 */
+	private CartResponse modify(User user, boolean delta, Consumer<Cart> mutation) {
+		if(!delta) {
+			return CartResponse.of(cartService.modify(user, mutation));
+		}
+		long[] previousVersion = new long[1];
+		List<Map<Long, CartResponse.Line>> linesBefore = new ArrayList<>(1);
+		Cart cart = cartService.modify(user, c -> {
+			previousVersion[0] = c.getVersion();
+			linesBefore.add(CartResponse.snapshot(c));
+			mutation.accept(c);
+		});
+		return CartResponse.delta(cart, previousVersion[0], linesBefore.get(linesBefore.size() - 1));
+	}
 		
 }
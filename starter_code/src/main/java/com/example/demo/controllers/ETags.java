@@ -0,0 +1,29 @@
+package com.example.demo.controllers;
+
+/**
+ * Helpers for answering conditional GET requests from a precomputed strong ETag.
+ */
+final class ETags {
+
+	private ETags() {
+	}
+
+	/**
+	 * Returns whether an {@code If-None-Match} header value matches the given quoted ETag.
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null || etag == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
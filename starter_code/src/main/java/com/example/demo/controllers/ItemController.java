@@ -1,41 +1,135 @@
 package com.example.demo.controllers;
 
 import com.example.demo.SareetaApplication;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.JdbcItemRepository;
+import com.example.demo.model.responses.ImportJob;
+import com.example.demo.model.responses.ItemBatch;
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.security.SecurityConstants;
+import com.example.demo.services.ItemCatalog;
+import com.example.demo.services.ItemImporter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 @RestController
 @RequestMapping("/api/item")
 public class ItemController {
 
+	private static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+
+	@Autowired
+	private ItemCatalog itemCatalog;
+
+	@Autowired
+	private JdbcItemRepository jdbcItemRepository;
+
+	@Autowired
+	private ItemImporter itemImporter;
+
 	@Autowired
-	private ItemRepository itemRepository;
+	private ObjectMapper objectMapper;
+
+	@Value("${catalog.page.max-size:500}")
+	private int maxPageSize;
+
+	@Value("${catalog.batch.max-ids:500}")
+	private int maxBatchIds;
+
+	@Value("${catalog.search.max-results:100}")
+	private int maxSearchResults;
+
+	@Value("${catalog.import.retry-after-seconds:60}")
+	private int importRetryAfterSeconds;
 	
 	@GetMapping
-	public ResponseEntity<List<Item>> getItems() {
+	public ResponseEntity<List<Item>> getItems(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		String etag = itemCatalog.getEtag();
+		if (ETags.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
 		SareetaApplication.logger.info("[ItemController] Retrieving all items");
-		return ResponseEntity.ok(itemRepository.findAll());
+		return ResponseEntity.ok().eTag(etag).body(itemCatalog.findAll());
+	}
+	
+	@GetMapping("/page")
+	public ResponseEntity<ItemPage> getItemPage(@RequestParam(defaultValue = "0") long after,
+			@RequestParam(defaultValue = "100") int size) {
+		if (size < 1) {
+			return ResponseEntity.badRequest().build();
+		}
+		SareetaApplication.logger.info("[ItemController] Retrieving items after id "+after);
+		return ResponseEntity.ok(itemCatalog.findPage(after, Math.min(size, maxPageSize)));
+	}
+
+	@GetMapping("/stream")
+	public ResponseEntity<StreamingResponseBody> streamItems() {
+		SareetaApplication.logger.info("[ItemController] Streaming all items");
+		ObjectWriter itemWriter = objectMapper.writerFor(Item.class)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		StreamingResponseBody body = out -> {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+				generator.writeStartArray();
+				jdbcItemRepository.streamAll(item -> {
+					try {
+						itemWriter.writeValue(generator, item);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				generator.writeEndArray();
+			}
+		};
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+	}
+	
+	@GetMapping("/batch")
+	public ResponseEntity<ItemBatch> getItemsByIds(@RequestParam List<Long> ids) {
+		if (ids.isEmpty() || ids.size() > maxBatchIds) {
+			SareetaApplication.logger.warn("[ItemController] Rejected batch of "+ids.size()+" item ids");
+			return ResponseEntity.badRequest().build();
+		}
+		SareetaApplication.logger.info("[ItemController] Retrieving "+ids.size()+" items by id");
+		return ResponseEntity.ok(itemCatalog.findAllById(ids));
 	}
 	
 	@GetMapping("/{id}")
 	public ResponseEntity<Item> getItemById(@PathVariable Long id) {
 		SareetaApplication.logger.info("[ItemController] Retrieving item with id "+id);
-		return ResponseEntity.of(itemRepository.findById(id));
+		return ResponseEntity.of(itemCatalog.findById(id));
 	}
 	
 	@GetMapping("/name/{name}")
 	public ResponseEntity<List<Item>> getItemsByName(@PathVariable String name) {
 		SareetaApplication.logger.info("[ItemController] Retrieving item by name "+name);
-		List<Item> items = itemRepository.findByName(name);
+		List<Item> items = itemCatalog.findByName(name);
 		if (items == null) {
 			SareetaApplication.logger.warn("[ItemController] Item with name "+name+" not found!");
 			return  ResponseEntity.notFound().build();
@@ -43,5 +137,50 @@ public class ItemController {
 		SareetaApplication.logger.info("[ItemController] Successfully retrieve item with name "+name);
 		return ResponseEntity.ok(items);
 	}
+
+	@GetMapping("/search")
+	public ResponseEntity<List<Item>> searchItems(@RequestParam("q") String query,
+			@RequestParam(defaultValue = "20") int limit) {
+		SareetaApplication.logger.info("[ItemController] Searching items for "+query);
+		return ResponseEntity.ok(itemCatalog.search(query, Math.min(limit, maxSearchResults)));
+	}
+
+	/**
+	 * Bulk-writes the catalog from an upload. Restricted to admins. The upload is spooled to a
+	 * temporary file and imported in the background; the response is 202 with the job, which can
+	 * be polled at the Location returned. Too many queued imports are answered with 503.
+	 */
+	@PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+	public ResponseEntity<ImportJob> importItems(HttpServletRequest request) throws IOException {
+		ItemImporter.Format format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(TEXT_CSV)
+				? ItemImporter.Format.CSV : ItemImporter.Format.NDJSON;
+		Path upload = Files.createTempFile("item-import-", ".upload");
+		try {
+			Files.copy(request.getInputStream(), upload, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(upload);
+			throw e;
+		}
+		ImportJob job = itemImporter.submit(upload, format);
+		if(job == null) {
+			SareetaApplication.logger.warn("[ItemController] Too many imports queued, rejecting "+format+" upload");
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(importRetryAfterSeconds))
+					.build();
+		}
+		SareetaApplication.logger.info("[ItemController] Queued import of "+format+" upload as job "+job.getJobId());
+		return ResponseEntity.accepted()
+				.location(URI.create(SecurityConstants.ITEM_IMPORT_URL + "/" + job.getJobId()))
+				.body(job);
+	}
+
+	@GetMapping("/import/{jobId}")
+	public ResponseEntity<ImportJob> getImportJob(@PathVariable String jobId) {
+		ImportJob job = itemImporter.getJob(jobId);
+		if(job == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(job);
+	}
 	
 }
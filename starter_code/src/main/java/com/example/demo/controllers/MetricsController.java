@@ -0,0 +1,25 @@
+package com.example.demo.controllers;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.cache.CacheStats;
+
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+	@Autowired
+	private CacheRegistry cacheRegistry;
+
+	@GetMapping("/caches")
+	public ResponseEntity<List<CacheStats>> getCacheStats() {
+		return ResponseEntity.ok(cacheRegistry.stats());
+	}
+}
@@ -1,51 +1,195 @@
 package com.example.demo.controllers;
 
+import com.example.demo.SareetaApplication;
+import java.net.URI;
+import java.security.Principal;
+import java.time.Instant;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderStats;
 import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.OrderRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderPage;
+import com.example.demo.model.responses.OrderSubmission;
+import com.example.demo.model.responses.OrderView;
+import com.example.demo.services.CartService;
+import com.example.demo.services.OrderHistoryReader;
+import com.example.demo.services.OrderHistoryVersions;
+import com.example.demo.services.OrderIdempotency;
+import com.example.demo.services.OrderStatistics;
+import com.example.demo.services.OrderSubmissionQueue;
+import com.example.demo.services.OrderWriter;
+import com.example.demo.services.UserCache;
 
 @RestController
 @RequestMapping("/api/order")
 public class OrderController {
-	
+
+	private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
 	
 	@Autowired
-	private UserRepository userRepository;
+	private UserCache userCache;
 	
 	@Autowired
-	private OrderRepository orderRepository;
+	private OrderHistoryVersions orderHistoryVersions;
+
+	@Autowired
+	private OrderHistoryReader orderHistoryReader;
+
+	@Autowired
+	private OrderWriter orderWriter;
+
+	@Autowired
+	private OrderStatistics orderStatistics;
+
+	@Autowired
+	private OrderIdempotency orderIdempotency;
+
+	@Autowired
+	private CartService cartService;
+
+	@Autowired
+	private OrderSubmissionQueue orderSubmissionQueue;
+
+	@Value("${order.history.page.max-size:100}")
+	private int maxPageSize;
+
+	@Value("${order.submission.retry-after-seconds:1}")
+	private long submissionRetryAfterSeconds;
 	
 	
+	/**
+	 * Writes the user's cart as an order. Retries sent with the same {@code Idempotency-Key}
+	 * return the order written by the first request instead of writing another.
+	 */
 	@PostMapping("/submit/{username}")
-	public ResponseEntity<UserOrder> submit(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+	public ResponseEntity<UserOrder> submit(@PathVariable String username,
+			@RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+		if(idempotencyKey != null && (idempotencyKey.trim().isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+			return ResponseEntity.badRequest().build();
+		}
+		User user = userCache.findByUsername(username);
 		if(user == null) {
 			return ResponseEntity.notFound().build();
 		}
-		UserOrder order = UserOrder.createFromCart(user.getCart());
-		orderRepository.save(order);
-		return ResponseEntity.ok(order);
+		if(idempotencyKey == null) {
+			return ResponseEntity.ok(writeOrder(user, null));
+		}
+		return ResponseEntity.ok(orderIdempotency.submitOnce(user, idempotencyKey, () -> writeOrder(user, idempotencyKey)));
+	}
+
+	private UserOrder writeOrder(User user, String idempotencyKey) {
+		Cart cart = cartService.getCart(user);
+		cartService.flush(user.getUsername());
+		UserOrder order = UserOrder.createFromCart(cart);
+		order.setIdempotencyKey(idempotencyKey);
+		orderWriter.save(order);
+		orderHistoryVersions.historyChanged(user.getUsername());
+		return order;
+	}
+
+	/**
+	 * Queues the order instead of writing it, answering 202 with a submission that can be polled
+	 * at the Location returned. A full queue is answered with 503.
+	 */
+	@PostMapping(value = "/submit/{username}", params = "async=true")
+	public ResponseEntity<OrderSubmission> submitAsync(@PathVariable String username) {
+		User user = userCache.findByUsername(username);
+		if(user == null) {
+			return ResponseEntity.notFound().build();
+		}
+		Cart cart = cartService.getCart(user);
+		if(cart.getLines().isEmpty()) {
+			return ResponseEntity.badRequest().build();
+		}
+		cartService.flush(username);
+		OrderSubmission submission = orderSubmissionQueue.submit(user, cart);
+		if(submission == null) {
+			SareetaApplication.logger.warn("[OrderController] Submission queue full, rejecting order for user "+ username);
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(submissionRetryAfterSeconds))
+					.build();
+		}
+		return ResponseEntity.accepted()
+				.location(URI.create("/api/order/submission/" + submission.getSubmissionId()))
+				.body(submission);
+	}
+
+	@GetMapping("/submission/{submissionId}")
+	public ResponseEntity<OrderSubmission> getSubmission(Principal principal, @PathVariable String submissionId) {
+		OrderSubmission submission = orderSubmissionQueue.getSubmission(submissionId, principal.getName());
+		if(submission == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(submission);
+	}
+	
+	/**
+	 * Order count, lifetime total and last order time of the user, read from a single row
+	 * maintained as orders are written.
+	 */
+	@GetMapping("/stats/{username}")
+	public ResponseEntity<UserOrderStats> getStatsForUser(@PathVariable String username) {
+		User user = userCache.findByUsername(username);
+		if(user == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(orderStatistics.getStats(user));
 	}
 	
 	@GetMapping("/history/{username}")
-	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+	public ResponseEntity<List<OrderView>> getOrdersForUser(@PathVariable String username,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		String cachedEtag = orderHistoryVersions.getCachedEtag(username);
+		if (ETags.matches(ifNoneMatch, cachedEtag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(cachedEtag).build();
+		}
+		User user = userCache.findByUsername(username);
+		if(user == null) {
+			return ResponseEntity.notFound().build();
+		}
+		String etag = orderHistoryVersions.getEtag(user);
+		if (ETags.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		return ResponseEntity.ok().eTag(etag).body(orderHistoryReader.findAll(user));
+	}
+
+	/**
+	 * One page of the user's orders, newest first, optionally limited to orders created in
+	 * {@code [from, to)}. Pages are addressed by order id, so each one costs the same index range
+	 * scan however many orders the user has.
+	 */
+	@GetMapping("/history/{username}/page")
+	public ResponseEntity<OrderPage> getOrderPageForUser(@PathVariable String username,
+			@RequestParam(defaultValue = "" + Long.MAX_VALUE) long before,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(required = false) Instant from,
+			@RequestParam(required = false) Instant to) {
+		if(size < 1 || (from != null && to != null && !from.isBefore(to))) {
+			return ResponseEntity.badRequest().build();
+		}
+		User user = userCache.findByUsername(username);
 		if(user == null) {
 			return ResponseEntity.notFound().build();
 		}
-		return ResponseEntity.ok(orderRepository.findByUser(user));
+		return ResponseEntity.ok(orderHistoryReader.findPage(user, before, Math.min(size, maxPageSize), from, to));
 	}
 }
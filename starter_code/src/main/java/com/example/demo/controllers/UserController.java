@@ -1,9 +1,18 @@
 package com.example.demo.controllers;
 
 import com.example.demo.SareetaApplication;
+import java.net.URI;
+import java.security.Principal;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -11,14 +20,25 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.example.demo.model.persistence.Cart;
+import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkCreateUsersRequest;
+import com.example.demo.model.requests.ChangePasswordRequest;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.responses.ProvisioningJob;
+import com.example.demo.security.JWTAuthenticationFilter;
+import com.example.demo.security.PasswordHashingExecutor;
+import com.example.demo.security.SecurityConstants;
+import com.example.demo.security.TokenVerifier;
+import com.example.demo.security.UserDetailsServiceImpl;
+import com.example.demo.services.UserAccounts;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserProvisioner;
 
 @RestController
 @RequestMapping("/api/user")
@@ -28,19 +48,42 @@ public class UserController {
 	private UserRepository userRepository;
 	
 	@Autowired
-	private CartRepository cartRepository;
+	private UserCache userCache;
+
+	@Autowired
+	private UserAccounts userAccounts;
 
 	@Autowired
 	private BCryptPasswordEncoder bCryptPasswordEncoder;
 
+	@Autowired
+	private PasswordHashingExecutor passwordHashingExecutor;
+
+	/** Continues requests once their password is hashed, so the hashing threads only hash. */
+	@Autowired
+	@Qualifier("applicationTaskExecutor")
+	private Executor applicationTaskExecutor;
+
+	@Autowired
+	private UserProvisioner userProvisioner;
+
+	@Autowired
+	private TokenVerifier tokenVerifier;
+
+	@Value("${user.provisioning.max-users:100000}")
+	private int maxProvisionedUsers;
+
+	@Value("${user.provisioning.retry-after-seconds:60}")
+	private long provisioningRetryAfterSeconds;
+
 	@GetMapping("/id/{id}")
 	public ResponseEntity<User> findById(@PathVariable Long id) {
-		return ResponseEntity.of(userRepository.findById(id));
+		return ResponseEntity.of(userCache.findById(id));
 	}
 	
 	@GetMapping("/{username}")
 	public ResponseEntity<User> findByUserName(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+		User user = userCache.findByUsername(username);
 		if (user == null) {
 			SareetaApplication.logger.warn("[UserController] User "+ username +" not found!");
 			return ResponseEntity.notFound().build();
@@ -49,24 +92,158 @@ public class UserController {
 		return ResponseEntity.ok(user);
 	}
 	
+	/**
+	 * The password is hashed on the password hashing pool, so the request thread is released
+	 * while it runs; when that pool is saturated the signup is refused with 503. A username that
+	 * is already taken is answered with 409.
+	 */
 	@PostMapping("/create")
-	public ResponseEntity<User> createUser(@RequestBody CreateUserRequest createUserRequest) {
-		User user = new User();
-		user.setUsername(createUserRequest.getUsername());
-		Cart cart = new Cart();
-		cartRepository.save(cart);
-		user.setCart(cart);
+	public CompletableFuture<ResponseEntity<User>> createUser(@RequestBody CreateUserRequest createUserRequest) {
 		if(createUserRequest.getPassword().length()<7 ||
 				!createUserRequest.getPassword().equals(createUserRequest.getConfirmPassword())){
 			//System.out.println("Error - Either length is less than 7 or pass and conf pass do not match. Unable to create ",
 			//		createUserRequest.getUsername());
 			SareetaApplication.logger.warn("[UserController] Unable to create user. Either pass length is less than 7 or pass and conf pass do not match.");
+			return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+		}
+		CompletableFuture<String> encodedPassword;
+		try {
+			encodedPassword = passwordHashingExecutor.submit(() -> bCryptPasswordEncoder.encode(createUserRequest.getPassword()));
+		} catch (RejectedExecutionException e) {
+			SareetaApplication.logger.warn("[UserController] Password hashing pool saturated, rejecting signup for "+ createUserRequest.getUsername());
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(passwordHashingExecutor.getRetryAfterSeconds()))
+					.build());
+		}
+		return encodedPassword.thenApplyAsync(password -> {
+			User user;
+			try {
+				user = userAccounts.createUser(createUserRequest.getUsername(), password);
+			} catch (DataIntegrityViolationException e) {
+				SareetaApplication.logger.warn("[UserController] Unable to create user "+ createUserRequest.getUsername() +", username already exists");
+				return ResponseEntity.status(HttpStatus.CONFLICT).<User>build();
+			}
+			SareetaApplication.logger.info("[UserController] User "+ user.getUsername() +" successfully created");
+			return ResponseEntity.ok(user);
+		}, applicationTaskExecutor);
+	}
+
+	/**
+	 * Queues a job creating many users at once and answers 202 with the job, which can be polled
+	 * at the Location returned. Its report gives the outcome of every row; invalid rows are
+	 * rejected individually without failing the rest. Too many queued jobs are answered with 503.
+	 */
+	@PostMapping("/bulk")
+	public ResponseEntity<ProvisioningJob> createUsers(@RequestBody BulkCreateUsersRequest request) {
+		if(request.getUsers() == null || request.getUsers().isEmpty() || request.getUsers().size() > maxProvisionedUsers) {
 			return ResponseEntity.badRequest().build();
 		}
-		user.setPassword(bCryptPasswordEncoder.encode(createUserRequest.getPassword()));
-		userRepository.save(user);
-		SareetaApplication.logger.info("[UserController] User "+ user.getUsername() +" successfully created");
-		return ResponseEntity.ok(user);
+		ProvisioningJob job = userProvisioner.submit(request.getUsers());
+		if(job == null) {
+			SareetaApplication.logger.warn("[UserController] Too many provisioning jobs queued, rejecting "+ request.getUsers().size() +" users");
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(provisioningRetryAfterSeconds))
+					.build();
+		}
+		return ResponseEntity.accepted()
+				.location(URI.create(SecurityConstants.USER_BULK_URL + "/" + job.getJobId()))
+				.body(job);
+	}
+
+	@GetMapping("/bulk/{jobId}")
+	public ResponseEntity<ProvisioningJob> getProvisioningJob(@PathVariable String jobId) {
+		ProvisioningJob job = userProvisioner.getJob(jobId);
+		if(job == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(job);
+	}
+
+	/**
+	 * Revokes the access token the request was made with and, if given, the refresh token.
+	 */
+	@PostMapping("/logout")
+	public ResponseEntity<Void> logout(@RequestHeader(SecurityConstants.HEADER_STRING) String authorization,
+			@RequestHeader(value = SecurityConstants.REFRESH_HEADER_STRING, required = false) String refreshToken) {
+		tokenVerifier.revoke(authorization.substring(SecurityConstants.TOKEN_PREFIX.length()));
+		if (refreshToken != null) {
+			try {
+				tokenVerifier.revoke(refreshToken);
+			} catch (JWTVerificationException e) {
+				SareetaApplication.logger.warn("[UserController] Ignoring invalid refresh token at logout: "+ e.getMessage());
+			}
+		}
+		return ResponseEntity.ok().build();
+	}
+
+	/**
+	 * Changes the caller's password and revokes every token issued to them so far. The response
+	 * carries a new access and refresh token. Both passwords are hashed on the password hashing pool.
+	 */
+	@PostMapping("/change-password")
+	public CompletableFuture<ResponseEntity<Void>> changePassword(Principal principal,
+			@RequestBody ChangePasswordRequest request) {
+		if(request.getCurrentPassword() == null || request.getNewPassword() == null
+				|| request.getNewPassword().length() < 7
+				|| !request.getNewPassword().equals(request.getConfirmPassword())) {
+			return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+		}
+		String username = principal.getName();
+		User user = userRepository.findByUsername(username);
+		if (user == null) {
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+		}
+		CompletableFuture<String> encodedPassword;
+		try {
+			encodedPassword = passwordHashingExecutor.submit(() ->
+					bCryptPasswordEncoder.matches(request.getCurrentPassword(), user.getPassword())
+							? bCryptPasswordEncoder.encode(request.getNewPassword())
+							: null);
+		} catch (RejectedExecutionException e) {
+			SareetaApplication.logger.warn("[UserController] Password hashing pool saturated, rejecting password change for "+ username);
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(passwordHashingExecutor.getRetryAfterSeconds()))
+					.build());
+		}
+		return encodedPassword.thenApplyAsync(password -> {
+			if (password == null) {
+				SareetaApplication.logger.warn("[UserController] Wrong current password for user "+ username);
+				return ResponseEntity.status(HttpStatus.FORBIDDEN).<Void>build();
+			}
+			Integer tokenVersion = userAccounts.changePassword(username, password);
+			if (tokenVersion == null) {
+				return ResponseEntity.status(HttpStatus.UNAUTHORIZED).<Void>build();
+			}
+			SareetaApplication.logger.info("[UserController] Changed password of user "+ username);
+			return ResponseEntity.ok()
+					.header(SecurityConstants.HEADER_STRING, SecurityConstants.TOKEN_PREFIX
+							+ JWTAuthenticationFilter.createToken(username, UserDetailsServiceImpl.authoritiesOf(user), tokenVersion))
+					.header(SecurityConstants.REFRESH_HEADER_STRING, JWTAuthenticationFilter.createRefreshToken(username, tokenVersion))
+					.<Void>build();
+		}, applicationTaskExecutor);
+	}
+
+	/**
+	 * Exchanges a refresh token issued at login for a new access token. Only the token's
+	 * signature and expiry are checked, so no password is hashed.
+	 */
+	@PostMapping("/refresh")
+	public ResponseEntity<Void> refreshToken(@RequestHeader(SecurityConstants.REFRESH_HEADER_STRING) String refreshToken) {
+		String username;
+		try {
+			username = tokenVerifier.verifyRefreshToken(refreshToken);
+		} catch (JWTVerificationException e) {
+			SareetaApplication.logger.warn("[UserController] Rejected refresh token: "+ e.getMessage());
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+		}
+		User user = username == null ? null : userCache.findByUsername(username);
+		if (user == null) {
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+		}
+		return ResponseEntity.ok()
+				.header(SecurityConstants.HEADER_STRING, SecurityConstants.TOKEN_PREFIX
+						+ JWTAuthenticationFilter.createToken(username, UserDetailsServiceImpl.authoritiesOf(user), user.getTokenVersion()))
+				.build();
 	}
 	
 }
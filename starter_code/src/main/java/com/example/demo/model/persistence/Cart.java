@@ -2,20 +2,24 @@ package com.example.demo.model.persistence;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.ManyToMany;
+import javax.persistence.MapKey;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
@@ -31,39 +35,103 @@ public class Cart {
 	@JsonProperty
 	@Column
 	private Long id;
-	
-	@ManyToMany
+
+	@Version
 	@JsonProperty
-	@Column
-    private List<Item> items;
+	@Column(nullable = false)
+	private long version;
+	
+	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
+	@MapKey(name = "itemId")
+	@JsonIgnore
+	private Map<Long, CartLine> linesByItemId = new HashMap<>();
 	
 	@OneToOne(mappedBy = "cart")
 	@JsonProperty
     private User user;
 	
-	@Column
+	@Column(name = "total")
+	@Convert(converter = CentsOrZeroConverter.class)
+	@JsonIgnore
+	private long totalCents;
+
 	@JsonProperty
-	private BigDecimal total;
+	public BigDecimal getTotal() {
+		return Money.toBigDecimal(totalCents);
+	}
 
-	public void addItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+	@JsonProperty
+	public void setTotal(BigDecimal total) {
+		totalCents = Money.toCents(total);
+	}
+
+	@JsonProperty("lines")
+	public List<CartLine> getLines() {
+		return new ArrayList<>(linesByItemId.values());
+	}
+
+	@JsonProperty("lines")
+	public void setLines(List<CartLine> lines) {
+		linesByItemId = new HashMap<>();
+		for (CartLine line : lines) {
+			line.setCart(this);
+			linesByItemId.put(line.getItemId(), line);
 		}
-		items.add(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+	}
+
+	public CartLine getLine(Long itemId) {
+		return linesByItemId.get(itemId);
+	}
+
+	public void addItem(Item item) {
+		addItem(item, 1);
+	}
+
+	public void addItem(Item item, int quantity) {
+		CartLine line = linesByItemId.get(item.getId());
+		if (line == null) {
+			line = new CartLine();
+			line.setCart(this);
+			line.setItem(item);
+			line.setItemId(item.getId());
+			line.setUnitPriceCents(item.getPriceCents());
+			linesByItemId.put(item.getId(), line);
 		}
-		total = total.add(item.getPrice());
+		line.setQuantity(line.getQuantity() + quantity);
+		totalCents += line.getUnitPriceCents() * quantity;
 	}
 	
 	public void removeItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		removeItem(item, 1);
+	}
+
+	/**
+	 * Removes up to {@code quantity} units of the item; removing more units than the cart
+	 * holds empties the line.
+	 */
+	public void removeItem(Item item, int quantity) {
+		CartLine line = linesByItemId.get(item.getId());
+		if (line == null) {
+			return;
 		}
-		items.remove(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		int removed = Math.min(quantity, line.getQuantity());
+		line.setQuantity(line.getQuantity() - removed);
+		if (line.getQuantity() == 0) {
+			linesByItemId.remove(item.getId());
+		}
+		totalCents -= line.getUnitPriceCents() * removed;
+	}
+
+	/**
+	 * Sets the number of units of the item in the cart; zero removes the line.
+	 */
+	public void setQuantity(Item item, int quantity) {
+		CartLine line = linesByItemId.get(item.getId());
+		int current = line == null ? 0 : line.getQuantity();
+		if (quantity > current) {
+			addItem(item, quantity - current);
+		} else if (quantity < current) {
+			removeItem(item, current - quantity);
 		}
-		total = total.subtract(item.getPrice());
 	}
 }
@@ -0,0 +1,70 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * One distinct item in a cart, with the number of units and the unit price it was added at.
+ */
+@Data
+@Entity
+@Table(name = "cart_line", uniqueConstraints = @UniqueConstraint(columnNames = {"cart_id", "item_id"}))
+public class CartLine {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@JsonProperty
+	private Long id;
+
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "cart_id", nullable = false)
+	@JsonIgnore
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private Cart cart;
+
+	@ManyToOne
+	@JoinColumn(name = "item_id", nullable = false)
+	@JsonIgnore
+	private Item item;
+
+	@Column(name = "item_id", insertable = false, updatable = false)
+	@JsonProperty
+	private Long itemId;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	@Column(name = "unit_price", nullable = false)
+	@Convert(converter = CentsConverter.class)
+	@JsonIgnore
+	private long unitPriceCents;
+
+	@JsonProperty
+	public BigDecimal getUnitPrice() {
+		return Money.toBigDecimal(unitPriceCents);
+	}
+
+	@JsonProperty
+	public void setUnitPrice(BigDecimal unitPrice) {
+		unitPriceCents = Money.toCents(unitPrice);
+	}
+}
@@ -0,0 +1,25 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Stores a {@code long} cents attribute in a decimal column that may still hold NULL, as the
+ * cart and order totals do for rows written before the amount was always set. A NULL amount
+ * reads as zero instead of failing to unbox into the primitive field.
+ */
+@Converter
+public class CentsOrZeroConverter implements AttributeConverter<Long, BigDecimal> {
+
+	@Override
+	public BigDecimal convertToDatabaseColumn(Long cents) {
+		return Money.toBigDecimal(cents == null ? 0 : cents);
+	}
+
+	@Override
+	public Long convertToEntityAttribute(BigDecimal amount) {
+		return amount == null ? 0L : Money.toCents(amount);
+	}
+}
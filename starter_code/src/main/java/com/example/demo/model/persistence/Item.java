@@ -3,6 +3,7 @@ package com.example.demo.model.persistence;
 import java.math.BigDecimal;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -29,11 +30,22 @@ public class Item {
 	@JsonProperty
 	private String name;
 	
-	@Column(nullable = false)
-	@JsonProperty
-	private BigDecimal price;
+	@Column(name = "price", nullable = false)
+	@Convert(converter = CentsConverter.class)
+	@JsonIgnore
+	private Long priceCents;
 	
 	@Column(nullable = false)
 	@JsonProperty
 	private String description;
+
+	@JsonProperty
+	public BigDecimal getPrice() {
+		return priceCents == null ? null : Money.toBigDecimal(priceCents);
+	}
+
+	@JsonProperty
+	public void setPrice(BigDecimal price) {
+		priceCents = price == null ? null : Money.toCents(price);
+	}
 }
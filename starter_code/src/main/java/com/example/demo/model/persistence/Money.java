@@ -0,0 +1,31 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between {@link BigDecimal} amounts, used at the JSON and database boundaries,
+ * and {@code long} minor units (cents), used for all arithmetic on prices and totals.
+ */
+public final class Money {
+
+	private static final int SCALE = 2;
+
+	private Money() {
+	}
+
+	/**
+	 * Converts an amount to cents, rejecting amounts that have fractions of a cent.
+	 */
+	public static long toCents(BigDecimal amount) {
+		try {
+			return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("not an exact amount of cents: " + amount.toPlainString());
+		}
+	}
+
+	public static BigDecimal toBigDecimal(long cents) {
+		return BigDecimal.valueOf(cents, SCALE);
+	}
+}
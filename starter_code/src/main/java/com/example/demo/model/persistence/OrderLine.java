@@ -0,0 +1,56 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Embeddable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * An item as it was when the order was placed: later changes to the item's name or price
+ * do not affect it.
+ */
+@Data
+@Embeddable
+public class OrderLine {
+
+	@Column(name = "item_id", nullable = false)
+	@JsonProperty
+	private Long itemId;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private String name;
+
+	@Column(name = "unit_price", nullable = false)
+	@Convert(converter = CentsConverter.class)
+	@JsonIgnore
+	private long unitPriceCents;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	@JsonProperty
+	public BigDecimal getUnitPrice() {
+		return Money.toBigDecimal(unitPriceCents);
+	}
+
+	@JsonProperty
+	public void setUnitPrice(BigDecimal unitPrice) {
+		unitPriceCents = Money.toCents(unitPrice);
+	}
+
+	public static OrderLine of(CartLine cartLine) {
+		OrderLine line = new OrderLine();
+		line.setItemId(cartLine.getItemId());
+		line.setName(cartLine.getItem().getName());
+		line.setUnitPriceCents(cartLine.getUnitPriceCents());
+		line.setQuantity(cartLine.getQuantity());
+		return line;
+	}
+}
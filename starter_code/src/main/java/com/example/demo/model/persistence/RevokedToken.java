@@ -0,0 +1,43 @@
+package com.example.demo.model.persistence;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.Data;
+
+/**
+ * A revoked token, identified by its digest, or, when only the username is set, every token
+ * issued to that user with a token version below {@code tokenVersion}. Rows are deleted once {@code expiresAt} has
+ * passed, as no token they cover can still be valid.
+ */
+@Data
+@Entity
+@Table(name = "revoked_token", indexes = @Index(name = "idx_revoked_token_expires_at", columnList = "expires_at"))
+public class RevokedToken {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Column(name = "token_digest")
+	private String tokenDigest;
+
+	@Column
+	private String username;
+
+	@Column(name = "token_version")
+	private Integer tokenVersion;
+
+	@Column(name = "revoked_at", nullable = false)
+	private Instant revokedAt;
+
+	@Column(name = "expires_at", nullable = false)
+	private Instant expiresAt;
+}
@@ -31,6 +31,16 @@ public class User {
 	@Column(nullable = false)
 	private String password;
 	
+	/** Grants the admin role, which guards catalog and account administration. Set directly in the database. */
+	@Column(nullable = false, columnDefinition = "boolean default false")
+	@JsonIgnore
+	private boolean admin;
+
+	/** Bumped on every password change; tokens carrying a lower version are revoked. */
+	@Column(name = "token_version", nullable = false, columnDefinition = "integer default 0")
+	@JsonIgnore
+	private int tokenVersion;
+	
 	@OneToOne(cascade = CascadeType.ALL)
     @JoinColumn(name = "cart_id", referencedColumnName = "id")
 	@JsonIgnore
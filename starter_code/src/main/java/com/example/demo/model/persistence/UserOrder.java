@@ -1,27 +1,38 @@
 package com.example.demo.model.persistence;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
+import javax.persistence.CollectionTable;
+import javax.persistence.Convert;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 @Data
 @Entity
-@Table(name = "user_order")
+@Table(name = "user_order", indexes = {
+		@Index(name = "idx_user_order_user_id", columnList = "user_id, id"),
+		// serves history pages limited to a creation time range
+		@Index(name = "idx_user_order_user_created_at", columnList = "user_id, created_at, id")},
+		uniqueConstraints = @UniqueConstraint(name = "uk_user_order_idempotency_key", columnNames = {"user_id", "idempotency_key"}))
 public class UserOrder {
 
 	@Id
@@ -30,25 +41,66 @@ public class UserOrder {
 	@Column
 	private Long id;
 	
+	/**
+	 * One entry per unit, for orders placed before line snapshots were stored. Left empty for newer
+	 * orders, so their write volume does not grow with the number of units.
+	 */
 	@ManyToMany(cascade = CascadeType.ALL)
 	@JsonProperty
 	@Column
-    private List<Item> items;
+    private List<Item> items = new ArrayList<>();
+
+	/** Snapshot of the cart's lines, written once when the order is created. Empty for older orders. */
+	@ElementCollection
+	@CollectionTable(name = "user_order_line", joinColumns = @JoinColumn(name = "order_id"),
+			indexes = @Index(name = "idx_user_order_line_order_id", columnList = "order_id"))
+	@JsonProperty
+	private List<OrderLine> lines = new ArrayList<>();
 	
 	@ManyToOne
 	@JoinColumn(name="user_id", nullable = false, referencedColumnName = "id")
 	@JsonProperty
     private User user;
 	
+	@Column(name = "total")
+	@Convert(converter = CentsOrZeroConverter.class)
+	@JsonIgnore
+	private long totalCents;
+
+	/** Null for orders placed before creation times were recorded. */
+	@Column(name = "created_at")
 	@JsonProperty
-	@Column
-	private BigDecimal total;
+	private Instant createdAt;
+
+	/** Key the client submitted the order with, if any. */
+	@Column(name = "idempotency_key")
+	@JsonIgnore
+	private String idempotencyKey;
+
+	@JsonProperty
+	public BigDecimal getTotal() {
+		return Money.toBigDecimal(totalCents);
+	}
+
+	@JsonProperty
+	public void setTotal(BigDecimal total) {
+		totalCents = Money.toCents(total);
+	}
 
 	public static UserOrder createFromCart(Cart cart) {
+		List<OrderLine> lines = new ArrayList<>();
+		for (CartLine line : cart.getLines()) {
+			lines.add(OrderLine.of(line));
+		}
+		return create(cart.getUser(), lines, cart.getTotalCents(), Instant.now());
+	}
+
+	public static UserOrder create(User user, List<OrderLine> lines, long totalCents, Instant createdAt) {
 		UserOrder order = new UserOrder();
-		order.setItems(cart.getItems().stream().collect(Collectors.toList()));
-		order.setTotal(cart.getTotal());
-		order.setUser(cart.getUser());
+		order.setLines(lines);
+		order.setTotalCents(totalCents);
+		order.setUser(user);
+		order.setCreatedAt(createdAt);
 		return order;
 	}
 	
@@ -0,0 +1,51 @@
+package com.example.demo.model.persistence;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * Running totals of a user's orders, updated in the transaction that writes each order.
+ */
+@Data
+@Entity
+@Table(name = "user_order_stats")
+public class UserOrderStats {
+
+	@Id
+	@Column(name = "user_id")
+	@JsonIgnore
+	private Long userId;
+
+	@Column(name = "order_count", nullable = false)
+	@JsonProperty
+	private long orderCount;
+
+	@Column(name = "lifetime_total", nullable = false)
+	@Convert(converter = CentsConverter.class)
+	@JsonIgnore
+	private long totalCents;
+
+	@Column(name = "last_order_at")
+	@JsonProperty
+	private Instant lastOrderAt;
+
+	@JsonProperty
+	public BigDecimal getTotal() {
+		return Money.toBigDecimal(totalCents);
+	}
+
+	@JsonProperty
+	public void setTotal(BigDecimal total) {
+		totalCents = Money.toCents(total);
+	}
+}
@@ -2,6 +2,7 @@ package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import com.example.demo.model.persistence.Item;
@@ -9,4 +10,6 @@ import com.example.demo.model.persistence.Item;
 public interface ItemRepository extends JpaRepository<Item, Long> {
 	public List<Item> findByName(String name);
 
+	public List<Item> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
 }
@@ -0,0 +1,78 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.Item;
+
+/**
+ * Plain JDBC access to the item table for work that should not go through the persistence context.
+ */
+@Repository
+public class JdbcItemRepository {
+
+	private static final int STREAM_FETCH_SIZE = 500;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public JdbcItemRepository(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	/**
+	 * Reads all items in id order from a forward-only, read-only cursor fetching
+	 * {@value #STREAM_FETCH_SIZE} rows at a time, handing each one to the consumer before the next
+	 * row is read. Runs in a read-only transaction, as some drivers only honour the fetch size with
+	 * auto-commit off; the transaction times out after {@code catalog.stream.timeout-seconds} so a
+	 * slow consumer cannot hold the connection indefinitely.
+	 */
+	@Transactional(readOnly = true, timeoutString = "${catalog.stream.timeout-seconds:300}")
+	public void streamAll(Consumer<Item> consumer) {
+		PreparedStatementCreator cursor = connection -> {
+			PreparedStatement ps = connection.prepareStatement("select id, name, price, description from item order by id",
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(STREAM_FETCH_SIZE);
+			return ps;
+		};
+		jdbcTemplate.query(cursor, rs -> {
+			Item item = new Item();
+			item.setId(rs.getLong("id"));
+			item.setName(rs.getString("name"));
+			item.setPrice(rs.getBigDecimal("price"));
+			item.setDescription(rs.getString("description"));
+			consumer.accept(item);
+		});
+	}
+
+	/**
+	 * Inserts the items as a single JDBC batch. Generated ids are not read back.
+	 */
+	public void insertAll(List<Item> items) {
+		jdbcTemplate.batchUpdate("insert into item (name, price, description) values (?, ?, ?)",
+				new BatchPreparedStatementSetter() {
+					@Override
+					public void setValues(PreparedStatement ps, int i) throws SQLException {
+						Item item = items.get(i);
+						ps.setString(1, item.getName());
+						ps.setBigDecimal(2, item.getPrice());
+						ps.setString(3, item.getDescription());
+					}
+
+					@Override
+					public int getBatchSize() {
+						return items.size();
+					}
+				});
+	}
+}
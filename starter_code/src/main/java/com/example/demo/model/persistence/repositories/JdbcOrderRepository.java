@@ -0,0 +1,69 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.sql.Timestamp;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.UserOrderStats;
+
+/**
+ * Plain JDBC access to the user_order table for aggregates.
+ */
+@Repository
+public class JdbcOrderRepository {
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate savepointTemplate;
+
+	public JdbcOrderRepository(DataSource dataSource, PlatformTransactionManager transactionManager) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.savepointTemplate = new TransactionTemplate(transactionManager);
+		this.savepointTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+	}
+
+	/**
+	 * Totals the user's orders, leaving out the given order if it is not null.
+	 */
+	public UserOrderStats sumOrders(long userId, Long excludedOrderId) {
+		return jdbcTemplate.queryForObject(
+				"select count(*), coalesce(sum(total), 0), max(created_at) from user_order where user_id = ? and id <> ?",
+				(rs, rowNum) -> {
+					UserOrderStats stats = new UserOrderStats();
+					stats.setUserId(userId);
+					stats.setOrderCount(rs.getLong(1));
+					stats.setTotal(rs.getBigDecimal(2));
+					Timestamp lastOrderAt = rs.getTimestamp(3);
+					stats.setLastOrderAt(lastOrderAt == null ? null : lastOrderAt.toInstant());
+					return stats;
+				}, userId, excludedOrderId == null ? -1L : excludedOrderId);
+	}
+
+	/**
+	 * Creates the user's totals row from their orders, leaving out the given order if it is not
+	 * null. Returns false if the row already exists.
+	 * <p>
+	 * An existing row is skipped by the insert itself. A row inserted concurrently after that
+	 * check still fails the insert with a duplicate key, and on some databases, such as PostgreSQL,
+	 * a failed statement aborts the whole transaction; the insert therefore runs under a savepoint
+	 * that is rolled back on failure, keeping the surrounding transaction usable.
+	 */
+	public boolean insertStatsIfAbsent(long userId, Long excludedOrderId) {
+		try {
+			Integer inserted = savepointTemplate.execute(status -> jdbcTemplate.update(
+					"insert into user_order_stats (user_id, order_count, lifetime_total, last_order_at)"
+					+ " select ?, count(*), coalesce(sum(total), 0), max(created_at) from user_order where user_id = ? and id <> ?"
+					+ " having not exists (select 1 from user_order_stats where user_id = ?)",
+					userId, userId, excludedOrderId == null ? -1L : excludedOrderId, userId));
+			return inserted != null && inserted > 0;
+		} catch (DuplicateKeyException e) {
+			return false;
+		}
+	}
+}
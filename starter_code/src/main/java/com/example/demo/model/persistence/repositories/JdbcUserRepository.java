@@ -0,0 +1,89 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import com.example.demo.model.persistence.User;
+
+/**
+ * Plain JDBC access to the user and cart tables for bulk provisioning.
+ */
+@Repository
+public class JdbcUserRepository {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public JdbcUserRepository(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public Set<String> findExistingUsernames(Collection<String> usernames) {
+		Set<String> existing = new HashSet<>();
+		if (usernames.isEmpty()) {
+			return existing;
+		}
+		String placeholders = usernames.stream().map(username -> "?").collect(Collectors.joining(", "));
+		jdbcTemplate.query("select username from user where username in (" + placeholders + ")",
+				rs -> {
+					existing.add(rs.getString(1));
+				}, usernames.toArray());
+		return existing;
+	}
+
+	/**
+	 * Inserts the users, each with a new empty cart and zero order totals, as three JDBC batches
+	 * and sets the generated ids on the users and their carts.
+	 */
+	public void insertAllWithCarts(List<User> users) {
+		jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			try (PreparedStatement carts = connection.prepareStatement(
+					"insert into cart (version, total) values (0, 0)", Statement.RETURN_GENERATED_KEYS)) {
+				for (int i = 0; i < users.size(); i++) {
+					carts.addBatch();
+				}
+				carts.executeBatch();
+				try (ResultSet keys = carts.getGeneratedKeys()) {
+					for (int i = 0; i < users.size() && keys.next(); i++) {
+						users.get(i).getCart().setId(keys.getLong(1));
+					}
+				}
+			}
+			try (PreparedStatement inserts = connection.prepareStatement(
+					"insert into user (username, password, cart_id) values (?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+				for (User user : users) {
+					inserts.setString(1, user.getUsername());
+					inserts.setString(2, user.getPassword());
+					inserts.setLong(3, user.getCart().getId());
+					inserts.addBatch();
+				}
+				inserts.executeBatch();
+				try (ResultSet keys = inserts.getGeneratedKeys()) {
+					for (int i = 0; i < users.size() && keys.next(); i++) {
+						users.get(i).setId(keys.getLong(1));
+					}
+				}
+			}
+			try (PreparedStatement stats = connection.prepareStatement(
+					"insert into user_order_stats (user_id, order_count, lifetime_total) values (?, 0, 0)")) {
+				for (User user : users) {
+					stats.setLong(1, user.getId());
+					stats.addBatch();
+				}
+				stats.executeBatch();
+			}
+			return null;
+		});
+	}
+}
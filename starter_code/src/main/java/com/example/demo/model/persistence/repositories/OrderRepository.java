@@ -1,12 +1,56 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderLineView;
+import com.example.demo.model.responses.OrderView;
 
 public interface OrderRepository extends JpaRepository<UserOrder, Long> {
 	List<UserOrder> findByUser(User user);
+
+	long countByUser(User user);
+
+	UserOrder findByUserAndIdempotencyKey(User user, String idempotencyKey);
+
+	@Query("select max(o.id) from UserOrder o where o.user = :user")
+	Long findLastOrderIdByUser(@Param("user") User user);
+
+	@Query("select new com.example.demo.model.responses.OrderView(o.id, o.totalCents, o.createdAt)"
+			+ " from UserOrder o where o.user = :user order by o.id")
+	List<OrderView> findViewsByUser(@Param("user") User user);
+
+	@Query("select new com.example.demo.model.responses.OrderView(o.id, o.totalCents, o.createdAt)"
+			+ " from UserOrder o where o.user = :user and o.id < :before order by o.id desc")
+	List<OrderView> findViewPageByUser(@Param("user") User user, @Param("before") long before, Pageable pageable);
+
+	@Query("select new com.example.demo.model.responses.OrderView(o.id, o.totalCents, o.createdAt)"
+			+ " from UserOrder o where o.user = :user and o.id < :before"
+			+ " and o.createdAt >= :from and o.createdAt < :to order by o.id desc")
+	List<OrderView> findViewPageByUserAndCreatedAt(@Param("user") User user, @Param("before") long before,
+			@Param("from") Instant from, @Param("to") Instant to, Pageable pageable);
+
+	@Query("select new com.example.demo.model.responses.OrderLineView(o.id, l.itemId, l.name, l.unitPriceCents, l.quantity)"
+			+ " from UserOrder o join o.lines l where o.user = :user order by o.id, l.itemId")
+	List<OrderLineView> findLinesByUser(@Param("user") User user);
+
+	@Query("select new com.example.demo.model.responses.OrderLineView(o.id, l.itemId, l.name, l.unitPriceCents, l.quantity)"
+			+ " from UserOrder o join o.lines l where o.id in :orderIds order by o.id, l.itemId")
+	List<OrderLineView> findLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+	/**
+	 * Lines of orders placed before line snapshots were stored, rebuilt from the live items.
+	 */
+	@Query("select new com.example.demo.model.responses.OrderLineView(o.id, i.id, i.name, i.priceCents, count(i))"
+			+ " from UserOrder o join o.items i where o.id in :orderIds"
+			+ " group by o.id, i.id, i.name, i.priceCents order by o.id, i.id")
+	List<OrderLineView> findLegacyLinesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
 }
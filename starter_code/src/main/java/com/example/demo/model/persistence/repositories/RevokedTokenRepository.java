@@ -0,0 +1,21 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.RevokedToken;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+	List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+	@Transactional
+	@Modifying
+	@Query("delete from RevokedToken r where r.expiresAt <= :now")
+	int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,23 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.demo.model.persistence.UserOrderStats;
+
+public interface UserOrderStatsRepository extends JpaRepository<UserOrderStats, Long> {
+
+	/**
+	 * Adds one order to the user's totals in place. Returns 0 if the user has no totals yet.
+	 */
+	@Modifying
+	@Query(value = "update user_order_stats set order_count = order_count + 1, lifetime_total = lifetime_total + :total,"
+			+ " last_order_at = case when last_order_at is null or last_order_at < :orderedAt then :orderedAt else last_order_at end"
+			+ " where user_id = :userId", nativeQuery = true)
+	int addOrder(@Param("userId") long userId, @Param("total") BigDecimal total, @Param("orderedAt") Instant orderedAt);
+}
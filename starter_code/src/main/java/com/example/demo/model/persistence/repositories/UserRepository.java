@@ -1,9 +1,29 @@
 package com.example.demo.model.persistence.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.demo.model.persistence.User;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 	User findByUsername(String username);
+
+	@Transactional
+	@Modifying
+	@Query("update User u set u.password = :password where u.username = :username")
+	int updatePassword(@Param("username") String username, @Param("password") String password);
+
+	/**
+	 * Stores a password chosen by the user and bumps their token version, which revokes every
+	 * token issued under the old password.
+	 */
+	@Modifying
+	@Query("update User u set u.password = :password, u.tokenVersion = u.tokenVersion + 1 where u.username = :username")
+	int changePassword(@Param("username") String username, @Param("password") String password);
+
+	@Query("select u.tokenVersion from User u where u.username = :username")
+	Integer findTokenVersionByUsername(@Param("username") String username);
 }
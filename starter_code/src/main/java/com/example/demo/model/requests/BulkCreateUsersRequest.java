@@ -0,0 +1,13 @@
+package com.example.demo.model.requests;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class BulkCreateUsersRequest {
+
+	@JsonProperty
+	private List<CreateUserRequest> users;
+}
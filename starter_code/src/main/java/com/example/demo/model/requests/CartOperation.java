@@ -0,0 +1,21 @@
+package com.example.demo.model.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class CartOperation {
+
+	public enum Type {
+		ADD, REMOVE, SET
+	}
+
+	@JsonProperty
+	private Type type;
+
+	@JsonProperty
+	private long itemId;
+
+	@JsonProperty
+	private int quantity;
+}
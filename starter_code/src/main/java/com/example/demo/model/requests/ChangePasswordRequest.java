@@ -0,0 +1,17 @@
+package com.example.demo.model.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class ChangePasswordRequest {
+
+	@JsonProperty
+	private String currentPassword;
+
+	@JsonProperty
+	private String newPassword;
+
+	@JsonProperty
+	private String confirmPassword;
+}
@@ -0,0 +1,120 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * Compact view of a cart. Built only from the cart's own columns and lines, so rendering it
+ * never loads the owning user or the catalog items.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CartResponse {
+
+	@JsonProperty
+	private Long cartId;
+
+	@JsonProperty
+	private long version;
+
+	/** Set on delta responses: the version the changes apply to. */
+	@JsonProperty
+	private Long previousVersion;
+
+	@JsonProperty
+	private BigDecimal total;
+
+	/** All lines, or on delta responses only the changed ones, with quantity 0 for removed lines. */
+	@JsonProperty
+	private List<Line> lines;
+
+	@JsonProperty
+	private boolean delta;
+
+	@Data
+	public static class Line {
+
+		@JsonProperty
+		private long itemId;
+
+		@JsonProperty
+		private int quantity;
+
+		@JsonProperty
+		private BigDecimal unitPrice;
+
+		@JsonProperty
+		private BigDecimal lineTotal;
+
+		static Line of(long itemId, int quantity, long unitPriceCents) {
+			Line line = new Line();
+			line.setItemId(itemId);
+			line.setQuantity(quantity);
+			line.setUnitPrice(Money.toBigDecimal(unitPriceCents));
+			line.setLineTotal(Money.toBigDecimal(unitPriceCents * quantity));
+			return line;
+		}
+	}
+
+	public static CartResponse of(Cart cart) {
+		CartResponse response = header(cart);
+		List<Line> lines = new ArrayList<>();
+		for (CartLine line : cart.getLines()) {
+			lines.add(Line.of(line.getItemId(), line.getQuantity(), line.getUnitPriceCents()));
+		}
+		response.setLines(lines);
+		return response;
+	}
+
+	/**
+	 * Captures the cart's lines before a mutation, for {@link #delta}.
+	 */
+	public static Map<Long, Line> snapshot(Cart cart) {
+		Map<Long, Line> lines = new HashMap<>();
+		for (CartLine line : cart.getLines()) {
+			lines.put(line.getItemId(), Line.of(line.getItemId(), line.getQuantity(), line.getUnitPriceCents()));
+		}
+		return lines;
+	}
+
+	/**
+	 * Builds a response holding only the lines that differ from the snapshot taken at {@code previousVersion}.
+	 */
+	public static CartResponse delta(Cart cart, long previousVersion, Map<Long, Line> linesBefore) {
+		CartResponse response = header(cart);
+		response.setDelta(true);
+		response.setPreviousVersion(previousVersion);
+		List<Line> lines = new ArrayList<>();
+		for (CartLine line : cart.getLines()) {
+			Line before = linesBefore.get(line.getItemId());
+			if (before == null || before.getQuantity() != line.getQuantity()) {
+				lines.add(Line.of(line.getItemId(), line.getQuantity(), line.getUnitPriceCents()));
+			}
+		}
+		for (Line before : linesBefore.values()) {
+			if (cart.getLine(before.getItemId()) == null) {
+				lines.add(Line.of(before.getItemId(), 0, Money.toCents(before.getUnitPrice())));
+			}
+		}
+		response.setLines(lines);
+		return response;
+	}
+
+	private static CartResponse header(Cart cart) {
+		CartResponse response = new CartResponse();
+		response.setCartId(cart.getId());
+		response.setVersion(cart.getVersion());
+		response.setTotal(cart.getTotal());
+		return response;
+	}
+}
@@ -0,0 +1,48 @@
+package com.example.demo.model.responses;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * State of an item import job. Each state is a new instance, so a job can be read while it runs.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportJob {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private String jobId;
+
+	@JsonProperty
+	private Status status;
+
+	@JsonProperty
+	private Instant submittedAt;
+
+	/** Items imported so far. */
+	@JsonProperty
+	private long imported;
+
+	/** Rows rejected so far. */
+	@JsonProperty
+	private long rejected;
+
+	/** Set once the job has completed. */
+	@JsonProperty
+	private ImportReport report;
+
+	/** Set when the job failed. */
+	@JsonProperty
+	private String error;
+}
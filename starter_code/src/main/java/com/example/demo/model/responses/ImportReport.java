@@ -0,0 +1,30 @@
+package com.example.demo.model.responses;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class ImportReport {
+
+	@JsonProperty
+	private long imported;
+
+	@JsonProperty
+	private long rejected;
+
+	@JsonProperty
+	private int chunks;
+
+	@JsonProperty
+	private long elapsedMillis;
+
+	@JsonProperty
+	private long itemsPerSecond;
+
+	/** The first rejected rows, capped so a bad upload cannot blow up the report. */
+	@JsonProperty
+	private List<String> errors = new ArrayList<>();
+}
@@ -0,0 +1,22 @@
+package com.example.demo.model.responses;
+
+import java.util.List;
+
+import com.example.demo.model.persistence.Item;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ItemBatch {
+
+	/** Found items, in the order their ids were requested. */
+	@JsonProperty
+	private List<Item> items;
+
+	@JsonProperty
+	private List<Long> missingIds;
+}
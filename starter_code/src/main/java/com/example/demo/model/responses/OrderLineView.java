@@ -0,0 +1,38 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class OrderLineView {
+
+	@JsonIgnore
+	private Long orderId;
+
+	@JsonProperty
+	private Long itemId;
+
+	@JsonProperty
+	private String name;
+
+	@JsonProperty
+	private BigDecimal unitPrice;
+
+	@JsonProperty
+	private int quantity;
+
+	/** Used by JPQL constructor expressions. */
+	public OrderLineView(Long orderId, Long itemId, String name, Long unitPriceCents, Number quantity) {
+		this.orderId = orderId;
+		this.itemId = itemId;
+		this.name = name;
+		this.unitPrice = Money.toBigDecimal(unitPriceCents);
+		this.quantity = quantity.intValue();
+	}
+}
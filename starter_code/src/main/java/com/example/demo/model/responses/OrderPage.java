@@ -0,0 +1,22 @@
+package com.example.demo.model.responses;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderPage {
+
+	/** Newest first. */
+	@JsonProperty
+	private List<OrderView> orders;
+
+	/** Id to pass as {@code before} for the next page, or null on the last page. */
+	@JsonProperty
+	private Long nextCursor;
+}
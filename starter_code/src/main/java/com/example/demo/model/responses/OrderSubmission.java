@@ -0,0 +1,45 @@
+package com.example.demo.model.responses;
+
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * State of an order submitted asynchronously.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class OrderSubmission {
+
+	public enum Status {
+		QUEUED, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private String submissionId;
+
+	/** The user who submitted the order; only they may read the submission. */
+	@JsonIgnore
+	private String username;
+
+	@JsonProperty
+	private Status status;
+
+	@JsonProperty
+	private Instant submittedAt;
+
+	/** Set once the order has been written. */
+	@JsonProperty
+	private Long orderId;
+
+	/** Set when the order could not be written. */
+	@JsonProperty
+	private String error;
+}
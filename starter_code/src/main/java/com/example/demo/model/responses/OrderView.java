@@ -0,0 +1,39 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.Money;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Read-only view of an order for history listings: the order's own columns plus its items grouped
+ * into lines, without the owning user.
+ */
+@Data
+@NoArgsConstructor
+public class OrderView {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private BigDecimal total;
+
+	@JsonProperty
+	private Instant createdAt;
+
+	@JsonProperty
+	private List<OrderLineView> lines = new ArrayList<>();
+
+	/** Used by JPQL constructor expressions. */
+	public OrderView(Long id, Long totalCents, Instant createdAt) {
+		this.id = id;
+		this.total = Money.toBigDecimal(totalCents == null ? 0 : totalCents);
+		this.createdAt = createdAt;
+	}
+}
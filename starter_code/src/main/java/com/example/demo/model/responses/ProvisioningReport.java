@@ -0,0 +1,47 @@
+package com.example.demo.model.responses;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class ProvisioningReport {
+
+	@JsonProperty
+	private long created;
+
+	@JsonProperty
+	private long rejected;
+
+	@JsonProperty
+	private int chunks;
+
+	@JsonProperty
+	private long elapsedMillis;
+
+	@JsonProperty
+	private long usersPerSecond;
+
+	/** One result per requested user, in request order. */
+	@JsonProperty
+	private List<Result> results = new ArrayList<>();
+
+	@Data
+	@JsonInclude(JsonInclude.Include.NON_NULL)
+	public static class Result {
+
+		@JsonProperty
+		private String username;
+
+		/** Set when the user was created. */
+		@JsonProperty
+		private Long id;
+
+		/** Set when the user was rejected. */
+		@JsonProperty
+		private String error;
+	}
+}
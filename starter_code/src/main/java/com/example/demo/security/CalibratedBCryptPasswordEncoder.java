@@ -0,0 +1,72 @@
+package com.example.demo.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCrypt encoder whose cost is chosen for the machine it runs on.
+ * Stored hashes with a lower cost are reported as needing an upgrade, so they are re-hashed at
+ * the configured cost on the user's next successful login. Costlier hashes are kept: a machine
+ * calibrating lower must not weaken them.
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final int MIN_BCRYPT_STRENGTH = 4;
+    private static final int MAX_BCRYPT_STRENGTH = 31;
+    private static final int CALIBRATION_STRENGTH = 8;
+    private static final int CALIBRATION_ROUNDS = 3;
+
+    private final int strength;
+
+    public CalibratedBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int encodedStrength = strengthOf(encodedPassword);
+        return encodedStrength > 0 && encodedStrength < strength;
+    }
+
+    /**
+     * Picks the highest strength whose hash takes at most {@code targetMillis} on this machine,
+     * within the given bounds. Each strength step doubles the work, so one strength is timed
+     * and the rest extrapolated.
+     */
+    public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(CALIBRATION_STRENGTH);
+        encoder.encode("calibration");
+        long fastestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            long start = System.nanoTime();
+            encoder.encode("calibration");
+            fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+        }
+        double ratio = (double) targetMillis * 1_000_000 / Math.max(1, fastestNanos);
+        int strength = CALIBRATION_STRENGTH + (int) Math.floor(Math.log(ratio) / Math.log(2));
+        return Math.max(Math.max(minStrength, MIN_BCRYPT_STRENGTH), Math.min(Math.min(maxStrength, MAX_BCRYPT_STRENGTH), strength));
+    }
+
+    /**
+     * Reads the cost from a {@code $2a$10$...} style hash, or returns -1 if it is not one.
+     */
+    static int strengthOf(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$') {
+            return -1;
+        }
+        int costStart = encodedPassword.indexOf('$', 1) + 1;
+        if (costStart <= 0 || costStart + 2 >= encodedPassword.length() || encodedPassword.charAt(costStart + 2) != '$') {
+            return -1;
+        }
+        char tens = encodedPassword.charAt(costStart);
+        char units = encodedPassword.charAt(costStart + 1);
+        if (!Character.isDigit(tens) || !Character.isDigit(units)) {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+}
@@ -2,8 +2,15 @@ package com.example.demo.security;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -13,37 +20,74 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.example.demo.SareetaApplication;
 import com.example.demo.model.persistence.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
-
 public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
     private AuthenticationManager authenticationManager;
+    private PasswordHashingExecutor passwordHashingExecutor;
 
-    public JWTAuthenticationFilter(AuthenticationManager authenticationManager) {
+    public JWTAuthenticationFilter(AuthenticationManager authenticationManager,
+                                   PasswordHashingExecutor passwordHashingExecutor) {
         this.authenticationManager = authenticationManager;
+        this.passwordHashingExecutor = passwordHashingExecutor;
     }
 
+    /**
+     * Checks the credentials on the password hashing pool instead of the request thread: the
+     * request is put into async mode and completed once the check is done. Returning null tells
+     * the superclass that authentication is still in progress.
+     */
     @Override
     public Authentication attemptAuthentication(HttpServletRequest req,
                                                 HttpServletResponse res) throws AuthenticationException {
+        User credentials;
         try {
-            User credentials = new ObjectMapper()
+            credentials = new ObjectMapper()
                     .readValue(req.getInputStream(), User.class);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
 
-            return authenticationManager.authenticate(
+        CompletableFuture<Authentication> authentication;
+        try {
+            authentication = passwordHashingExecutor.submit(() -> authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             credentials.getUsername(),
                             credentials.getPassword(),
-                            new ArrayList<>()));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+                            new ArrayList<>())));
+        } catch (RejectedExecutionException e) {
+            SareetaApplication.logger.warn("[JWTAuthenticationFilter] Password hashing pool saturated, rejecting login");
+            passwordHashingExecutor.rejectBusy(res);
+            return null;
         }
+
+        AsyncContext asyncContext = req.startAsync();
+        authentication.whenComplete((auth, failure) -> {
+            try {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                if (cause == null) {
+                    successfulAuthentication(req, res, null, auth);
+                } else if (cause instanceof AuthenticationException) {
+                    unsuccessfulAuthentication(req, res, (AuthenticationException) cause);
+                } else {
+                    SareetaApplication.logger.error("[JWTAuthenticationFilter] Login failed", cause);
+                    res.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+            } catch (IOException | ServletException e) {
+                SareetaApplication.logger.error("[JWTAuthenticationFilter] Failed to write login response", e);
+            } finally {
+                asyncContext.complete();
+            }
+        });
+        return null;
     }
 
     @Override
@@ -52,16 +96,64 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
                                             FilterChain chain,
                                             Authentication auth) throws IOException, ServletException {
 
-        String token = createToken(((org.springframework.security.core.userdetails.User) auth.getPrincipal()).getUsername());
-        res.addHeader(SecurityConstants.HEADER_STRING, SecurityConstants.TOKEN_PREFIX + token);
+        String username = ((org.springframework.security.core.userdetails.User) auth.getPrincipal()).getUsername();
+        int tokenVersion = VersionedUserDetails.tokenVersionOf(auth.getPrincipal());
+        res.addHeader(SecurityConstants.HEADER_STRING, SecurityConstants.TOKEN_PREFIX
+                + createToken(username, AuthorityUtils.authorityListToSet(auth.getAuthorities()), tokenVersion));
+        res.addHeader(SecurityConstants.REFRESH_HEADER_STRING, createRefreshToken(username, tokenVersion));
     }
 
+    /**
+     * Creates a short-lived access token without any authorities, sent as the bearer token of every request.
+     */
     public static String createToken(String username) {
-        String token = JWT.create()
+        return createToken(username, Collections.emptyList());
+    }
+
+    /**
+     * Creates a short-lived access token carrying the given authorities. They are trusted until the
+     * token expires, so a revoked role takes at most one access token lifetime to take effect.
+     */
+    public static String createToken(String username, Collection<String> authorities) {
+        return createToken(username, authorities, 0);
+    }
+
+    /**
+     * Creates a short-lived access token carrying the given authorities, issued under the user's
+     * current token version so a password change revokes it.
+     */
+    public static String createToken(String username, Collection<String> authorities, int tokenVersion) {
+        JWTCreator.Builder token = JWT.create()
                 .withSubject(username)
-                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME))
-                .sign(HMAC512(SecurityConstants.SECRET.getBytes()));
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(new Date())
+                .withClaim(TokenVerifier.TOKEN_VERSION_CLAIM, tokenVersion)
+                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.ACCESS_TOKEN_EXPIRATION_TIME));
+        if (!authorities.isEmpty()) {
+            token.withArrayClaim(TokenVerifier.AUTHORITIES_CLAIM, authorities.toArray(new String[0]));
+        }
+        return token.sign(TokenVerifier.ALGORITHM);
+    }
+
+    /**
+     * Creates a long-lived token that can only be exchanged for new access tokens
+     * at {@link SecurityConstants#REFRESH_URL}, without checking the password again.
+     */
+    public static String createRefreshToken(String username) {
+        return createRefreshToken(username, 0);
+    }
 
-        return token;
+    /**
+     * Creates a refresh token issued under the user's current token version.
+     */
+    public static String createRefreshToken(String username, int tokenVersion) {
+        return JWT.create()
+                .withSubject(username)
+                .withJWTId(UUID.randomUUID().toString())
+                .withIssuedAt(new Date())
+                .withClaim(TokenVerifier.TOKEN_VERSION_CLAIM, tokenVersion)
+                .withClaim(TokenVerifier.TYPE_CLAIM, TokenVerifier.REFRESH_TYPE)
+                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.REFRESH_TOKEN_EXPIRATION_TIME))
+                .sign(TokenVerifier.ALGORITHM);
     }
-}
\ No newline at end of file
+}
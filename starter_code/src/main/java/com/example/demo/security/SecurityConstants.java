@@ -3,8 +3,15 @@ package com.example.demo.security;
 public class SecurityConstants {
 
     public static final String SECRET = "oursecretkey";
-    public static final long EXPIRATION_TIME = 864_000_000; // 10 days
+    public static final long ACCESS_TOKEN_EXPIRATION_TIME = 900_000; // 15 minutes
+    public static final long REFRESH_TOKEN_EXPIRATION_TIME = 864_000_000; // 10 days
     public static final String TOKEN_PREFIX = "Bearer ";
     public static final String HEADER_STRING = "Authorization";
+    public static final String REFRESH_HEADER_STRING = "Refresh-Token";
     public static final String SIGN_UP_URL = "/api/user/create";
+    public static final String REFRESH_URL = "/api/user/refresh";
+    public static final String ITEM_IMPORT_URL = "/api/item/import";
+    public static final String USER_BULK_URL = "/api/user/bulk";
+    public static final String ADMIN_ROLE = "ADMIN";
+    public static final String ADMIN_AUTHORITY = "ROLE_" + ADMIN_ROLE;
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.example.demo.security;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.cache.BloomFilter;
+import com.example.demo.model.persistence.RevokedToken;
+import com.example.demo.model.persistence.repositories.RevokedTokenRepository;
+
+/**
+ * Tokens revoked before they expire, either one at a time (logout) or all of a user's tokens
+ * below a token version (password change).
+ * <p>
+ * Revocations are stored in the revoked_token table and held in memory as exact maps behind a
+ * Bloom filter, so checking a token that was not revoked, the common case, costs a few bit probes.
+ * Every {@code security.revocation.rebuild-interval-seconds} the expired rows are deleted and the
+ * maps and filter are rebuilt from the table, which also picks up revocations made by other instances.
+ */
+@Component
+public class TokenRevocations {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_CAPACITY = 1024;
+    private static final String TOKEN_KEY = "token:";
+    private static final String USER_KEY = "user:";
+
+    /** One generation of revocations; replaced as a whole on rebuild. */
+    private static final class State {
+        final int capacity;
+        final BloomFilter filter;
+        final Map<String, Long> tokenExpiries = new ConcurrentHashMap<>();
+        final Map<String, Integer> userTokenVersions = new ConcurrentHashMap<>();
+
+        State(int expectedRevocations) {
+            this.capacity = Math.max(MIN_CAPACITY, expectedRevocations * 2);
+            this.filter = new BloomFilter(capacity, FALSE_POSITIVE_RATE);
+        }
+
+        void addToken(String tokenDigest, long expiresAtMillis) {
+            tokenExpiries.put(tokenDigest, expiresAtMillis);
+            filter.add(TOKEN_KEY, tokenDigest);
+        }
+
+        void addUser(String username, int tokenVersion) {
+            userTokenVersions.merge(username, tokenVersion, Math::max);
+            filter.add(USER_KEY, username);
+        }
+
+        int size() {
+            return tokenExpiries.size() + userTokenVersions.size();
+        }
+    }
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final long rebuildIntervalSeconds;
+    private final ScheduledExecutorService rebuilder;
+    private final Object writeLock = new Object();
+    private volatile State state = new State(0);
+
+    public TokenRevocations(RevokedTokenRepository revokedTokenRepository,
+                            @Value("${security.revocation.rebuild-interval-seconds:300}") long rebuildIntervalSeconds) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.rebuildIntervalSeconds = rebuildIntervalSeconds;
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-revocations");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        rebuild();
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, rebuildIntervalSeconds, rebuildIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param tokenVersion the user's token version the token was issued under, 0 if it carries none
+     */
+    public boolean isRevoked(String tokenDigest, String username, int tokenVersion) {
+        State current = state;
+        if (current.filter.mightContain(TOKEN_KEY, tokenDigest) && current.tokenExpiries.containsKey(tokenDigest)) {
+            return true;
+        }
+        if (current.filter.mightContain(USER_KEY, username)) {
+            Integer validVersion = current.userTokenVersions.get(username);
+            return validVersion != null && tokenVersion < validVersion;
+        }
+        return false;
+    }
+
+    public void revokeToken(String tokenDigest, Date expiresAt) {
+        Instant expiry = expiresAt != null ? expiresAt.toInstant()
+                : Instant.now().plusMillis(SecurityConstants.REFRESH_TOKEN_EXPIRATION_TIME);
+        RevokedToken revoked = new RevokedToken();
+        revoked.setTokenDigest(tokenDigest);
+        revoked.setRevokedAt(Instant.now());
+        revoked.setExpiresAt(expiry);
+        revokedTokenRepository.save(revoked);
+        synchronized (writeLock) {
+            state.addToken(tokenDigest, expiry.toEpochMilli());
+        }
+        rebuildIfFull();
+    }
+
+    /**
+     * Revokes every token issued to the user under a token version below {@code tokenVersion}.
+     * Inside a transaction the row joins it and the in-memory state only changes once it commits,
+     * so a rolled back password change leaves the user's tokens valid.
+     */
+    public void revokeAllTokens(String username, int tokenVersion) {
+        Instant revokedAt = Instant.now();
+        RevokedToken revoked = new RevokedToken();
+        revoked.setUsername(username);
+        revoked.setTokenVersion(tokenVersion);
+        revoked.setRevokedAt(revokedAt);
+        revoked.setExpiresAt(revokedAt.plusMillis(SecurityConstants.REFRESH_TOKEN_EXPIRATION_TIME));
+        revokedTokenRepository.save(revoked);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addUser(username, tokenVersion);
+                }
+            });
+        } else {
+            addUser(username, tokenVersion);
+        }
+    }
+
+    /**
+     * Drops expired revocations and reloads the rest from the table into a freshly sized filter.
+     */
+    public void rebuild() {
+        synchronized (writeLock) {
+            Instant now = Instant.now();
+            int deleted = revokedTokenRepository.deleteExpired(now);
+            List<RevokedToken> revocations = revokedTokenRepository.findByExpiresAtAfter(now);
+            State rebuilt = new State(revocations.size());
+            for (RevokedToken revoked : revocations) {
+                if (revoked.getTokenDigest() != null) {
+                    rebuilt.addToken(revoked.getTokenDigest(), revoked.getExpiresAt().toEpochMilli());
+                } else if (revoked.getUsername() != null && revoked.getTokenVersion() != null) {
+                    rebuilt.addUser(revoked.getUsername(), revoked.getTokenVersion());
+                }
+            }
+            state = rebuilt;
+            SareetaApplication.logger.info("[TokenRevocations] Loaded " + revocations.size()
+                    + " revocations, pruned " + deleted + " expired");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private void addUser(String username, int tokenVersion) {
+        synchronized (writeLock) {
+            state.addUser(username, tokenVersion);
+        }
+        rebuildIfFull();
+    }
+
+    private void rebuildIfFull() {
+        State current = state;
+        if (current.size() > current.capacity) {
+            rebuilder.execute(this::rebuildQuietly);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            SareetaApplication.logger.error("[TokenRevocations] Failed to rebuild revocations", e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.stereotype.Component;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+
+/**
+ * Verifies bearer tokens with one shared verifier and remembers the subjects of recently verified
+ * tokens by token digest, so a client sending the same token again costs a hash lookup instead of
+ * an HMAC check. Tokens are remembered until they expire or for {@code security.token-cache.ttl-seconds},
+ * whichever comes first. Revocation is checked on every call, cached or not.
+ */
+@Component
+public class TokenVerifier {
+
+    static final Algorithm ALGORITHM = Algorithm.HMAC512(SecurityConstants.SECRET.getBytes());
+    static final String TYPE_CLAIM = "typ";
+    static final String REFRESH_TYPE = "refresh";
+    static final String AUTHORITIES_CLAIM = "authorities";
+    static final String TOKEN_VERSION_CLAIM = "ver";
+
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM).build();
+    private static final JWTVerifier REFRESH_VERIFIER = JWT.require(ALGORITHM).withClaim(TYPE_CLAIM, REFRESH_TYPE).build();
+
+    /** What is remembered of a verified access token. */
+    private static final class VerifiedToken {
+        final String subject;
+        final int tokenVersion;
+        final List<String> authorities;
+
+        VerifiedToken(String subject, int tokenVersion, List<String> authorities) {
+            this.subject = subject;
+            this.tokenVersion = tokenVersion;
+            this.authorities = authorities;
+        }
+    }
+
+    private final TokenRevocations tokenRevocations;
+    private final BoundedCache<String, VerifiedToken> verifiedTokens;
+
+    public TokenVerifier(CacheRegistry cacheRegistry, TokenRevocations tokenRevocations,
+                         @Value("${security.token-cache.max-size:10000}") int maxSize,
+                         @Value("${security.token-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.tokenRevocations = tokenRevocations;
+        this.verifiedTokens = cacheRegistry.create("security.verified-tokens", maxSize, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Verifies an access token. Refresh tokens are not accepted.
+     *
+     * @return the token's subject, or null if it has none
+     * @throws JWTVerificationException if the token is not valid or has been revoked
+     */
+    public String verify(String token) {
+        VerifiedToken verified = verifyAccessToken(token);
+        return verified == null ? null : verified.subject;
+    }
+
+    /**
+     * Verifies an access token and builds the authentication it stands for.
+     *
+     * @return the authentication, or null if the token has no subject
+     * @throws JWTVerificationException if the token is not valid or has been revoked
+     */
+    public UsernamePasswordAuthenticationToken authenticate(String token) {
+        VerifiedToken verified = verifyAccessToken(token);
+        if (verified == null) {
+            return null;
+        }
+        return new UsernamePasswordAuthenticationToken(verified.subject, null,
+                AuthorityUtils.createAuthorityList(verified.authorities.toArray(new String[0])));
+    }
+
+    private VerifiedToken verifyAccessToken(String token) {
+        String digest = digest(token);
+        VerifiedToken verified = verifiedTokens.get(digest);
+        if (verified == null) {
+            DecodedJWT jwt = VERIFIER.verify(token);
+            if (REFRESH_TYPE.equals(jwt.getClaim(TYPE_CLAIM).asString())) {
+                throw new JWTVerificationException("refresh tokens cannot be used as access tokens");
+            }
+            if (jwt.getSubject() == null) {
+                return null;
+            }
+            List<String> authorities = jwt.getClaim(AUTHORITIES_CLAIM).asList(String.class);
+            verified = new VerifiedToken(jwt.getSubject(), tokenVersion(jwt),
+                    authorities == null ? Collections.emptyList() : Collections.unmodifiableList(authorities));
+            if (jwt.getExpiresAt() != null) {
+                verifiedTokens.put(digest, verified, jwt.getExpiresAt().getTime());
+            } else {
+                verifiedTokens.put(digest, verified);
+            }
+        }
+        checkNotRevoked(digest, verified.subject, verified.tokenVersion);
+        return verified;
+    }
+
+    /**
+     * Verifies a refresh token. Refreshing is rare compared to requests, so these are not cached.
+     *
+     * @return the token's subject, or null if it has none
+     * @throws JWTVerificationException if the token is not a valid refresh token or has been revoked
+     */
+    public String verifyRefreshToken(String token) {
+        DecodedJWT jwt = REFRESH_VERIFIER.verify(token);
+        if (jwt.getSubject() != null) {
+            checkNotRevoked(digest(token), jwt.getSubject(), tokenVersion(jwt));
+        }
+        return jwt.getSubject();
+    }
+
+    /**
+     * Revokes a valid access or refresh token until it expires.
+     *
+     * @throws JWTVerificationException if the token is not valid
+     */
+    public void revoke(String token) {
+        DecodedJWT jwt = VERIFIER.verify(token);
+        tokenRevocations.revokeToken(digest(token), jwt.getExpiresAt());
+    }
+
+    private void checkNotRevoked(String digest, String subject, int tokenVersion) {
+        if (tokenRevocations.isRevoked(digest, subject, tokenVersion)) {
+            throw new JWTVerificationException("token has been revoked");
+        }
+    }
+
+    private static int tokenVersion(DecodedJWT jwt) {
+        Integer tokenVersion = jwt.getClaim(TOKEN_VERSION_CLAIM).asInt();
+        return tokenVersion == null ? 0 : tokenVersion;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -1,28 +1,59 @@
 package com.example.demo.security;
 
 import java.util.Collections;
+import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import com.example.demo.SareetaApplication;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.services.UserCache;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
+
+    @Autowired
+    private UserCache userCache;
 
     @Autowired
     private UserRepository userRepository;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username);
+        User user = userCache.findByUsername(username);
         if (user == null) {
             throw new UsernameNotFoundException(username);
         }
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), Collections.emptyList());
+        return new VersionedUserDetails(user.getUsername(), user.getPassword(),
+                AuthorityUtils.createAuthorityList(authoritiesOf(user).toArray(new String[0])), user.getTokenVersion());
+    }
+
+    /**
+     * The authorities granted to the user, as carried in their access tokens.
+     */
+    public static List<String> authoritiesOf(User user) {
+        return user.isAdmin() ? Collections.singletonList(SecurityConstants.ADMIN_AUTHORITY) : Collections.emptyList();
+    }
+
+    /**
+     * Called after a successful login whose stored hash was made with a lower BCrypt strength
+     * than the configured one; stores the password re-hashed at the current strength.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        if (userRepository.updatePassword(userDetails.getUsername(), newPassword) == 0) {
+            return userDetails;
+        }
+        userCache.userChanged(userDetails.getUsername());
+        SareetaApplication.logger.info("[UserDetailsServiceImpl] Re-hashed password of user " + userDetails.getUsername());
+        return new VersionedUserDetails(userDetails.getUsername(), newPassword, userDetails.getAuthorities(),
+                VersionedUserDetails.tokenVersionOf(userDetails));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package com.example.demo.security;
+
+import java.util.Collection;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+/**
+ * The user details checked at login, along with the token version the issued tokens carry.
+ */
+public class VersionedUserDetails extends User {
+
+    private final int tokenVersion;
+
+    public VersionedUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities,
+                                int tokenVersion) {
+        super(username, password, authorities);
+        this.tokenVersion = tokenVersion;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    /**
+     * @return the token version of the given login principal, 0 if it does not carry one
+     */
+    public static int tokenVersionOf(Object principal) {
+        return principal instanceof VersionedUserDetails ? ((VersionedUserDetails) principal).getTokenVersion() : 0;
+    }
+}
@@ -19,21 +19,30 @@ public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     private UserDetailsServiceImpl userDetailsService;
     private BCryptPasswordEncoder bCryptPasswordEncoder;
+    private PasswordHashingExecutor passwordHashingExecutor;
+    private TokenVerifier tokenVerifier;
 
     public WebSecurityConfiguration(UserDetailsServiceImpl userDetailsService,
-                                    BCryptPasswordEncoder bCryptPasswordEncoder) {
+                                    BCryptPasswordEncoder bCryptPasswordEncoder,
+                                    PasswordHashingExecutor passwordHashingExecutor,
+                                    TokenVerifier tokenVerifier) {
         this.userDetailsService = userDetailsService;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.tokenVerifier = tokenVerifier;
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http.cors().and().csrf().disable().authorizeRequests()
                 .antMatchers(HttpMethod.POST, SecurityConstants.SIGN_UP_URL).permitAll()
+                .antMatchers(HttpMethod.POST, SecurityConstants.REFRESH_URL).permitAll()
+                .antMatchers(SecurityConstants.ITEM_IMPORT_URL, SecurityConstants.ITEM_IMPORT_URL + "/**").hasRole(SecurityConstants.ADMIN_ROLE)
+                .antMatchers(SecurityConstants.USER_BULK_URL, SecurityConstants.USER_BULK_URL + "/**").hasRole(SecurityConstants.ADMIN_ROLE)
                 .anyRequest().authenticated()
                 .and()
-                .addFilter(new JWTAuthenticationFilter(authenticationManager()))
-                .addFilter(new JWTAuthenticationVerificationFilter(authenticationManager()))
+                .addFilter(new JWTAuthenticationFilter(authenticationManager(), passwordHashingExecutor))
+                .addFilter(new JWTAuthenticationVerificationFilter(authenticationManager(), tokenVerifier))
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 .and()
                 .exceptionHandling().authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED));
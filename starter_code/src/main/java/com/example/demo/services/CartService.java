@@ -0,0 +1,229 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+
+/**
+ * Applies cart mutations and persists them.
+ * Mutations for the same user are linearised by a per-user lock stripe: the cart is re-read,
+ * mutated and written while the lock is held, so concurrent requests cannot overwrite each
+ * other's changes, while different users proceed in parallel. The {@code @Version} on
+ * {@link Cart} catches writers outside this process; such conflicts are retried.
+ * <p>
+ * By default every mutation is saved immediately. With {@code cart.write-behind.enabled} the
+ * mutated cart is kept in memory instead and written once after {@code cart.write-behind.flush-delay-millis},
+ * so a burst of mutations for one user costs a single write. Pending carts are flushed before an
+ * order is created from them and when the application shuts down. A pending cart is only touched
+ * under its user's lock; callers get copies of it.
+ */
+@Service
+public class CartService {
+
+	private static final int LOCK_STRIPES = 1024;
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final CartRepository cartRepository;
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+	private final boolean writeBehind;
+	private final long flushDelayMillis;
+	private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+	private final Map<String, Cart> pendingCarts = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService flusher;
+
+	public CartService(CartRepository cartRepository, EntityManager entityManager,
+			PlatformTransactionManager transactionManager,
+			@Value("${cart.write-behind.enabled:false}") boolean writeBehind,
+			@Value("${cart.write-behind.flush-delay-millis:2000}") long flushDelayMillis) {
+		this.cartRepository = cartRepository;
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.writeBehind = writeBehind;
+		this.flushDelayMillis = flushDelayMillis;
+		this.flusher = writeBehind ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cart-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+	}
+
+	/**
+	 * Returns the user's current cart, including mutations that have not been written yet, as a
+	 * copy that later mutations do not change. The user may be a cached copy, so the cart is
+	 * re-read rather than taken from it.
+	 */
+	public Cart getCart(User user) {
+		if (writeBehind) {
+			Lock lock = locks.get(user.getUsername());
+			lock.lock();
+			try {
+				Cart pending = pendingCarts.get(user.getUsername());
+				if (pending != null) {
+					return copyOf(pending);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return transactionTemplate.execute(status -> currentState(user.getCart()));
+	}
+
+	public Cart modify(User user, Consumer<Cart> mutation) {
+		Lock lock = locks.get(user.getUsername());
+		lock.lock();
+		try {
+			for (int attempt = 1; ; attempt++) {
+				try {
+					return transactionTemplate.execute(status -> applyLocked(user, mutation));
+				} catch (ObjectOptimisticLockingFailureException e) {
+					if (attempt == MAX_ATTEMPTS) {
+						throw e;
+					}
+					SareetaApplication.logger.warn("[CartService] Concurrent cart update for user " + user.getUsername() + ", retrying");
+					// a request-scoped (open in view) persistence context outlives the rolled back
+					// transaction and still holds the stale cart; drop it so the retry reads the row again
+					entityManager.clear();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the user's pending cart, if any.
+	 */
+	public void flush(String username) {
+		Lock lock = locks.get(username);
+		lock.lock();
+		try {
+			Cart cart = pendingCarts.get(username);
+			if (cart == null) {
+				return;
+			}
+			adoptPersistentState(cart, cartRepository.save(cart));
+			pendingCarts.remove(username);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@PreDestroy
+	public void flushAll() {
+		if (flusher != null) {
+			flusher.shutdownNow();
+		}
+		for (String username : pendingCarts.keySet()) {
+			flushQuietly(username);
+		}
+	}
+
+	private Cart applyLocked(User user, Consumer<Cart> mutation) {
+		Cart cart = pendingCarts.get(user.getUsername());
+		if (cart == null) {
+			cart = currentState(user.getCart());
+			if (writeBehind && entityManager.contains(cart)) {
+				// the pending cart outlives this transaction; detached, its mutations are not
+				// written by the dirty check at commit but by the deferred flush
+				Hibernate.initialize(cart.getLinesByItemId());
+				entityManager.detach(cart);
+			}
+		}
+		mutation.accept(cart);
+		if (writeBehind) {
+			if (pendingCarts.put(user.getUsername(), cart) == null) {
+				flusher.schedule(() -> flushQuietly(user.getUsername()), flushDelayMillis, TimeUnit.MILLISECONDS);
+			}
+			return copyOf(cart);
+		}
+		adoptPersistentState(cart, cartRepository.save(cart));
+		return cart;
+	}
+
+	/**
+	 * The caller's cart may have been loaded before the lock was taken; re-read it so the
+	 * mutation applies to the latest committed state.
+	 */
+	private Cart currentState(Cart cart) {
+		if (cart.getId() == null) {
+			return cart;
+		}
+		if (entityManager.contains(cart)) {
+			entityManager.refresh(cart);
+			return cart;
+		}
+		Cart current = entityManager.find(Cart.class, cart.getId());
+		return current != null ? current : cart;
+	}
+
+	private void flushQuietly(String username) {
+		try {
+			flush(username);
+		} catch (RuntimeException e) {
+			SareetaApplication.logger.error("[CartService] Failed to write cart for user " + username + ", retrying", e);
+			if (flusher != null && !flusher.isShutdown()) {
+				flusher.schedule(() -> flushQuietly(username), flushDelayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private static Cart copyOf(Cart cart) {
+		Cart copy = new Cart();
+		copy.setId(cart.getId());
+		copy.setVersion(cart.getVersion());
+		copy.setUser(cart.getUser());
+		copy.setTotalCents(cart.getTotalCents());
+		List<CartLine> lines = new ArrayList<>();
+		for (CartLine line : cart.getLines()) {
+			CartLine lineCopy = new CartLine();
+			lineCopy.setId(line.getId());
+			lineCopy.setItem(line.getItem());
+			lineCopy.setItemId(line.getItemId());
+			lineCopy.setQuantity(line.getQuantity());
+			lineCopy.setUnitPriceCents(line.getUnitPriceCents());
+			lines.add(lineCopy);
+		}
+		copy.setLines(lines);
+		return copy;
+	}
+
+	/**
+	 * A detached cart stays in use across writes; copy the version and generated ids back from
+	 * the merged copy so the next merge updates the same rows instead of conflicting.
+	 */
+	private static void adoptPersistentState(Cart cart, Cart saved) {
+		if (saved == null || saved == cart) {
+			return;
+		}
+		cart.setVersion(saved.getVersion());
+		for (CartLine savedLine : saved.getLines()) {
+			CartLine line = cart.getLine(savedLine.getItemId());
+			if (line != null) {
+				line.setId(savedLine.getId());
+			}
+		}
+	}
+}
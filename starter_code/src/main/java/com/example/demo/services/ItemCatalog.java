@@ -0,0 +1,198 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemBatch;
+import com.example.demo.model.responses.ItemPage;
+
+/**
+ * Read-through cache in front of {@link ItemRepository}.
+ * Every cached entry is keyed by the catalog version it was loaded under, so bumping the
+ * version on an item write makes all earlier entries unreachable at once, including ones
+ * that a concurrent reader is still loading.
+ * <p>
+ * The cache holds detached copies of the loaded items and every lookup returns copies of those,
+ * so no item instance is shared with a persistence context or between requests.
+ */
+@Service
+public class ItemCatalog {
+
+	private static final String ALL_ITEMS = "*";
+
+	private final ItemRepository itemRepository;
+	private final ItemSearchIndex itemSearchIndex;
+	private final AtomicLong version = new AtomicLong();
+	private final long epoch = System.currentTimeMillis();
+	private final BoundedCache<VersionedKey, Item> itemsById;
+	private final BoundedCache<VersionedKey, List<Item>> itemLists;
+
+	public ItemCatalog(ItemRepository itemRepository, ItemSearchIndex itemSearchIndex, CacheRegistry cacheRegistry,
+			@Value("${catalog.cache.max-size:10000}") int maxSize,
+			@Value("${catalog.cache.ttl-seconds:600}") long ttlSeconds) {
+		this.itemRepository = itemRepository;
+		this.itemSearchIndex = itemSearchIndex;
+		this.itemsById = cacheRegistry.create("catalog.items", maxSize, ttlSeconds, TimeUnit.SECONDS);
+		this.itemLists = cacheRegistry.create("catalog.lists", Math.max(1, maxSize / 10), ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Strong ETag of the catalog as of the current version. Read it before the data it
+	 * describes so that a concurrent write can only make the tag older than the body.
+	 */
+	public String getEtag() {
+		return "\"" + epoch + "-" + version.get() + "\"";
+	}
+
+	public List<Item> findAll() {
+		return copiesOf(itemLists.get(new VersionedKey(version.get(), ALL_ITEMS),
+				key -> Collections.unmodifiableList(copiesOf(itemRepository.findAll()))));
+	}
+
+	public Optional<Item> findById(Long id) {
+		return Optional.ofNullable(itemsById.get(new VersionedKey(version.get(), id),
+				key -> itemRepository.findById(id).map(ItemCatalog::copyOf).orElse(null))).map(ItemCatalog::copyOf);
+	}
+
+	/**
+	 * Resolves the ids from the cache, loading all misses with a single {@code IN} query.
+	 */
+	public ItemBatch findAllById(List<Long> ids) {
+		long currentVersion = version.get();
+		Map<Long, Item> found = new HashMap<>();
+		Set<Long> misses = new LinkedHashSet<>();
+		for (Long id : ids) {
+			Item item = itemsById.get(new VersionedKey(currentVersion, id));
+			if (item != null) {
+				found.put(id, copyOf(item));
+			} else {
+				misses.add(id);
+			}
+		}
+		if (!misses.isEmpty()) {
+			for (Item item : itemRepository.findAllById(misses)) {
+				itemsById.put(new VersionedKey(currentVersion, item.getId()), copyOf(item));
+				found.put(item.getId(), copyOf(item));
+			}
+		}
+		List<Item> items = new ArrayList<>(ids.size());
+		List<Long> missingIds = new ArrayList<>();
+		for (Long id : ids) {
+			Item item = found.get(id);
+			if (item != null) {
+				items.add(item);
+			} else {
+				missingIds.add(id);
+			}
+		}
+		return new ItemBatch(items, missingIds);
+	}
+
+	public List<Item> findByName(String name) {
+		List<Item> items = itemLists.get(new VersionedKey(version.get(), "name:" + name), key -> {
+			List<Item> loaded = itemRepository.findByName(name);
+			return loaded == null ? null : Collections.unmodifiableList(copiesOf(loaded));
+		});
+		return items == null ? null : copiesOf(items);
+	}
+
+	/**
+	 * Returns up to {@code size} items with an id greater than {@code after}, in id order.
+	 * Pages are read straight from the repository; the keyset predicate keeps each one an index range scan.
+	 */
+	public ItemPage findPage(long after, int size) {
+		List<Item> items = itemRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, size + 1));
+		Long nextCursor = null;
+		if (items.size() > size) {
+			items = items.subList(0, size);
+			nextCursor = items.get(size - 1).getId();
+		}
+		return new ItemPage(items, nextCursor);
+	}
+
+	public List<Item> search(String query, int limit) {
+		return copiesOf(itemSearchIndex.search(query, limit));
+	}
+
+	/**
+	 * Must be called after a bulk write to the item table; rebuilds the search index as well.
+	 */
+	public void catalogReloaded() {
+		itemSearchIndex.rebuild();
+		catalogChanged();
+	}
+
+	/**
+	 * Must be called after any write to the item table.
+	 */
+	public void catalogChanged() {
+		version.incrementAndGet();
+		itemsById.clear();
+		itemLists.clear();
+	}
+
+	private static Item copyOf(Item item) {
+		Item copy = new Item();
+		copy.setId(item.getId());
+		copy.setName(item.getName());
+		copy.setPriceCents(item.getPriceCents());
+		copy.setDescription(item.getDescription());
+		return copy;
+	}
+
+	private static List<Item> copiesOf(List<Item> items) {
+		List<Item> copies = new ArrayList<>(items.size());
+		for (Item item : items) {
+			copies.add(copyOf(item));
+		}
+		return copies;
+	}
+
+	private static final class VersionedKey {
+		private final long version;
+		private final Object key;
+
+		VersionedKey(long version, Object key) {
+			this.version = version;
+			this.key = key;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof VersionedKey)) {
+				return false;
+			}
+			VersionedKey other = (VersionedKey) o;
+			return version == other.version && key.equals(other.key);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(version, key);
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.example.demo.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.JdbcItemRepository;
+import com.example.demo.model.responses.ImportJob;
+import com.example.demo.model.responses.ImportReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams an item upload into the item table.
+ * Rows are parsed one line at a time and written in JDBC batches, one transaction per chunk,
+ * so heap use stays flat regardless of the upload size and a bad chunk only loses itself.
+ * <p>
+ * Uploads are imported as background jobs run one at a time, from the file the upload was
+ * spooled to; at most {@code catalog.import.max-queued-jobs} wait behind the running one. Job
+ * states are kept for {@code catalog.import.job-ttl-seconds} for polling.
+ */
+@Service
+public class ItemImporter {
+
+	public enum Format {
+		CSV, NDJSON
+	}
+
+	private static final int MAX_REPORTED_ERRORS = 100;
+	private static final int PROGRESS_LOG_INTERVAL = 100;
+
+	private final JdbcItemRepository jdbcItemRepository;
+	private final ItemCatalog itemCatalog;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectMapper objectMapper;
+	private final ThreadPoolExecutor jobRunner;
+	private final BoundedCache<String, ImportJob> jobs;
+	private final int chunkSize;
+
+	public ItemImporter(JdbcItemRepository jdbcItemRepository, ItemCatalog itemCatalog,
+			PlatformTransactionManager transactionManager, ObjectMapper objectMapper, CacheRegistry cacheRegistry,
+			@Value("${catalog.import.chunk-size:5000}") int chunkSize,
+			@Value("${catalog.import.max-queued-jobs:4}") int maxQueuedJobs,
+			@Value("${catalog.import.job-ttl-seconds:86400}") long jobTtlSeconds) {
+		this.jdbcItemRepository = jdbcItemRepository;
+		this.itemCatalog = itemCatalog;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.objectMapper = objectMapper;
+		this.chunkSize = chunkSize;
+		this.jobs = cacheRegistry.create("catalog.import-jobs", 1000, jobTtlSeconds, TimeUnit.SECONDS);
+		this.jobRunner = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, maxQueuedJobs)),
+				runnable -> {
+					Thread thread = new Thread(runnable, "item-import-job");
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Queues an import of the spooled upload, which is deleted once the job has run, or returns
+	 * null, deleting the upload, if too many jobs are already waiting.
+	 */
+	public ImportJob submit(Path upload, Format format) throws IOException {
+		String jobId = UUID.randomUUID().toString();
+		Instant submittedAt = Instant.now();
+		ImportJob queued = new ImportJob(jobId, ImportJob.Status.QUEUED, submittedAt, 0, 0, null, null);
+		jobs.put(jobId, queued);
+		try {
+			jobRunner.execute(() -> run(jobId, submittedAt, upload, format));
+		} catch (RejectedExecutionException e) {
+			jobs.invalidate(jobId);
+			Files.deleteIfExists(upload);
+			return null;
+		}
+		return queued;
+	}
+
+	public ImportJob getJob(String jobId) {
+		return jobs.get(jobId);
+	}
+
+	private void run(String jobId, Instant submittedAt, Path upload, Format format) {
+		try (InputStream in = Files.newInputStream(upload)) {
+			jobs.put(jobId, new ImportJob(jobId, ImportJob.Status.RUNNING, submittedAt, 0, 0, null, null));
+			ImportReport report = importItems(in, format, progress -> jobs.put(jobId, new ImportJob(jobId,
+					ImportJob.Status.RUNNING, submittedAt, progress.getImported(), progress.getRejected(), null, null)));
+			jobs.put(jobId, new ImportJob(jobId, ImportJob.Status.COMPLETED, submittedAt,
+					report.getImported(), report.getRejected(), report, null));
+		} catch (IOException | RuntimeException e) {
+			SareetaApplication.logger.error("[ItemImporter] Import job " + jobId + " failed", e);
+			ImportJob last = jobs.get(jobId);
+			jobs.put(jobId, new ImportJob(jobId, ImportJob.Status.FAILED, submittedAt,
+					last == null ? 0 : last.getImported(), last == null ? 0 : last.getRejected(), null, "import failed"));
+		} finally {
+			try {
+				Files.deleteIfExists(upload);
+			} catch (IOException e) {
+				SareetaApplication.logger.warn("[ItemImporter] Could not delete upload " + upload, e);
+			}
+		}
+	}
+
+	public ImportReport importItems(InputStream in, Format format) throws IOException {
+		return importItems(in, format, progress -> { });
+	}
+
+	/**
+	 * Imports the upload on the calling thread, reporting progress after every chunk.
+	 */
+	public ImportReport importItems(InputStream in, Format format, Consumer<ImportReport> progress) throws IOException {
+		ImportReport report = new ImportReport();
+		long start = System.nanoTime();
+		List<Item> chunk = new ArrayList<>(chunkSize);
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			String line;
+			long lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().isEmpty() || (format == Format.CSV && lineNumber == 1 && isCsvHeader(line))) {
+					continue;
+				}
+				try {
+					chunk.add(validate(format == Format.CSV ? parseCsv(line) : objectMapper.readValue(line, Item.class)));
+				} catch (IOException | IllegalArgumentException e) {
+					reject(report, 1, "line " + lineNumber + ": " + e.getMessage());
+					continue;
+				}
+				if (chunk.size() == chunkSize) {
+					writeChunk(chunk, report, lineNumber, start);
+					progress.accept(report);
+				}
+			}
+			if (!chunk.isEmpty()) {
+				writeChunk(chunk, report, lineNumber, start);
+				progress.accept(report);
+			}
+		} finally {
+			if (report.getImported() > 0) {
+				itemCatalog.catalogReloaded();
+			}
+		}
+		report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+		report.setItemsPerSecond(throughput(report.getImported(), start));
+		SareetaApplication.logger.info("[ItemImporter] Imported " + report.getImported() + " items, rejected "
+				+ report.getRejected() + " in " + report.getElapsedMillis() + " ms");
+		return report;
+	}
+
+	private void writeChunk(List<Item> chunk, ImportReport report, long lineNumber, long start) {
+		try {
+			transactionTemplate.executeWithoutResult(status -> jdbcItemRepository.insertAll(chunk));
+			report.setImported(report.getImported() + chunk.size());
+		} catch (DataAccessException e) {
+			reject(report, chunk.size(), "chunk ending at line " + lineNumber + ": " + e.getMostSpecificCause().getMessage());
+		}
+		report.setChunks(report.getChunks() + 1);
+		chunk.clear();
+		if (report.getChunks() % PROGRESS_LOG_INTERVAL == 0) {
+			SareetaApplication.logger.info("[ItemImporter] Imported " + report.getImported() + " items so far ("
+					+ throughput(report.getImported(), start) + " items/s)");
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		jobRunner.shutdownNow();
+	}
+
+	private static void reject(ImportReport report, int rows, String error) {
+		report.setRejected(report.getRejected() + rows);
+		if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+			report.getErrors().add(error);
+		}
+	}
+
+	private static long throughput(long items, long start) {
+		long elapsedNanos = Math.max(1, System.nanoTime() - start);
+		return items * 1_000_000_000L / elapsedNanos;
+	}
+
+	private static Item validate(Item item) {
+		if (item.getName() == null || item.getName().trim().isEmpty()) {
+			throw new IllegalArgumentException("name is required");
+		}
+		if (item.getPrice() == null || item.getPrice().signum() < 0) {
+			throw new IllegalArgumentException("price must be a non-negative number");
+		}
+		if (item.getDescription() == null) {
+			throw new IllegalArgumentException("description is required");
+		}
+		return item;
+	}
+
+	private static boolean isCsvHeader(String line) {
+		return line.trim().toLowerCase(Locale.ROOT).startsWith("name,");
+	}
+
+	/**
+	 * Parses a {@code name,price,description} line. Fields may be double-quoted, with {@code ""}
+	 * standing for a literal quote inside a quoted field.
+	 */
+	static Item parseCsv(String line) {
+		List<String> fields = new ArrayList<>(3);
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		if (fields.size() != 3) {
+			throw new IllegalArgumentException("expected 3 fields but found " + fields.size());
+		}
+		Item item = new Item();
+		item.setName(fields.get(0).trim());
+		try {
+			item.setPrice(new BigDecimal(fields.get(1).trim()));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("invalid price '" + fields.get(1) + "'");
+		}
+		item.setDescription(fields.get(2).trim());
+		return item;
+	}
+}
@@ -0,0 +1,232 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.JdbcItemRepository;
+
+/**
+ * In-memory inverted index over item names and descriptions.
+ * Terms are kept in a sorted map so a query term matches every indexed term it is a prefix of;
+ * all query terms must match. Results are ranked by a weighted term frequency, where name hits
+ * outweigh description hits and exact term matches outweigh prefix matches.
+ */
+@Service
+public class ItemSearchIndex {
+
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final int NAME_WEIGHT = 3;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static final int EXACT_MATCH_BONUS = 2;
+
+	private final JdbcItemRepository jdbcItemRepository;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Object rebuildLock = new Object();
+
+	// guarded by lock
+	private NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+	private Map<Long, Item> items = new HashMap<>();
+	private Map<Long, Set<String>> termsByItem = new HashMap<>();
+	/** Items indexed (or removed, as null) while a rebuild is reading the table; null when not rebuilding. */
+	private Map<Long, Item> changedDuringRebuild;
+
+	public ItemSearchIndex(JdbcItemRepository jdbcItemRepository) {
+		this.jdbcItemRepository = jdbcItemRepository;
+	}
+
+	/**
+	 * Rebuilds the whole index from the item table. Queries keep being served from the
+	 * previous index until the new one is swapped in. Items indexed or removed while the table
+	 * is being read are applied to the new index before the swap, so they are not lost.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		synchronized (rebuildLock) {
+			long start = System.nanoTime();
+			NavigableMap<String, Map<Long, Integer>> newPostings = new TreeMap<>();
+			Map<Long, Item> newItems = new HashMap<>();
+			Map<Long, Set<String>> newTermsByItem = new HashMap<>();
+			lock.writeLock().lock();
+			try {
+				changedDuringRebuild = new LinkedHashMap<>();
+			} finally {
+				lock.writeLock().unlock();
+			}
+			try {
+				jdbcItemRepository.streamAll(item -> addTo(item, newPostings, newItems, newTermsByItem));
+				lock.writeLock().lock();
+				try {
+					for (Map.Entry<Long, Item> change : changedDuringRebuild.entrySet()) {
+						removeFrom(change.getKey(), newPostings, newItems, newTermsByItem);
+						if (change.getValue() != null) {
+							addTo(change.getValue(), newPostings, newItems, newTermsByItem);
+						}
+					}
+					postings = newPostings;
+					items = newItems;
+					termsByItem = newTermsByItem;
+				} finally {
+					lock.writeLock().unlock();
+				}
+			} finally {
+				lock.writeLock().lock();
+				try {
+					changedDuringRebuild = null;
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+			SareetaApplication.logger.info("[ItemSearchIndex] Indexed " + newItems.size() + " items with "
+					+ newPostings.size() + " terms in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+		}
+	}
+
+	/**
+	 * Adds the item to the index, replacing any previously indexed version of it.
+	 */
+	public void index(Item item) {
+		lock.writeLock().lock();
+		try {
+			removeFrom(item.getId(), postings, items, termsByItem);
+			addTo(item, postings, items, termsByItem);
+			if (changedDuringRebuild != null) {
+				changedDuringRebuild.put(item.getId(), item);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Long itemId) {
+		lock.writeLock().lock();
+		try {
+			removeFrom(itemId, postings, items, termsByItem);
+			if (changedDuringRebuild != null) {
+				changedDuringRebuild.put(itemId, null);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public List<Item> search(String query, int limit) {
+		List<String> queryTerms = new ArrayList<>(tokenize(query).keySet());
+		if (queryTerms.isEmpty() || limit < 1) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			Map<Long, Integer> scores = null;
+			for (String queryTerm : queryTerms) {
+				Map<Long, Integer> termScores = scoreTerm(queryTerm);
+				if (scores == null) {
+					scores = termScores;
+				} else {
+					scores.keySet().retainAll(termScores.keySet());
+					for (Map.Entry<Long, Integer> entry : scores.entrySet()) {
+						entry.setValue(entry.getValue() + termScores.get(entry.getKey()));
+					}
+				}
+				if (scores.isEmpty()) {
+					return Collections.emptyList();
+				}
+			}
+			List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(scores.entrySet());
+			ranked.sort((a, b) -> {
+				int byScore = Integer.compare(b.getValue(), a.getValue());
+				return byScore != 0 ? byScore : Long.compare(a.getKey(), b.getKey());
+			});
+			List<Item> result = new ArrayList<>(Math.min(limit, ranked.size()));
+			for (int i = 0; i < ranked.size() && i < limit; i++) {
+				result.add(items.get(ranked.get(i).getKey()));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return items.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private Map<Long, Integer> scoreTerm(String queryTerm) {
+		Map<Long, Integer> termScores = new HashMap<>();
+		for (Map.Entry<String, Map<Long, Integer>> posting
+				: postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false).entrySet()) {
+			int multiplier = posting.getKey().equals(queryTerm) ? EXACT_MATCH_BONUS : 1;
+			for (Map.Entry<Long, Integer> hit : posting.getValue().entrySet()) {
+				termScores.merge(hit.getKey(), hit.getValue() * multiplier, Math::max);
+			}
+		}
+		return termScores;
+	}
+
+	private static void addTo(Item item, NavigableMap<String, Map<Long, Integer>> postings,
+			Map<Long, Item> items, Map<Long, Set<String>> termsByItem) {
+		Map<String, Integer> weights = tokenize(item.getName(), NAME_WEIGHT);
+		tokenize(item.getDescription(), DESCRIPTION_WEIGHT).forEach((term, weight) -> weights.merge(term, weight, Integer::sum));
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			postings.computeIfAbsent(entry.getKey(), term -> new HashMap<>()).put(item.getId(), entry.getValue());
+		}
+		items.put(item.getId(), item);
+		termsByItem.put(item.getId(), new HashSet<>(weights.keySet()));
+	}
+
+	private static void removeFrom(Long itemId, NavigableMap<String, Map<Long, Integer>> postings,
+			Map<Long, Item> items, Map<Long, Set<String>> termsByItem) {
+		Set<String> terms = termsByItem.remove(itemId);
+		if (terms == null) {
+			return;
+		}
+		for (String term : terms) {
+			Map<Long, Integer> posting = postings.get(term);
+			posting.remove(itemId);
+			if (posting.isEmpty()) {
+				postings.remove(term);
+			}
+		}
+		items.remove(itemId);
+	}
+
+	private static Map<String, Integer> tokenize(String text) {
+		return tokenize(text, 1);
+	}
+
+	private static Map<String, Integer> tokenize(String text, int weight) {
+		Map<String, Integer> terms = new HashMap<>();
+		if (text == null) {
+			return terms;
+		}
+		for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+			if (!token.isEmpty()) {
+				terms.merge(token, weight, Integer::sum);
+			}
+		}
+		return terms;
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.demo.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderLineView;
+import com.example.demo.model.responses.OrderPage;
+import com.example.demo.model.responses.OrderView;
+
+/**
+ * Reads order history as {@link OrderView}s in two queries per call, one for the orders and one
+ * for all of their line snapshots, however many orders are returned. Orders placed before line
+ * snapshots were stored cost one more query, which rebuilds their lines from the catalog.
+ */
+@Service
+public class OrderHistoryReader {
+
+	private final OrderRepository orderRepository;
+
+	public OrderHistoryReader(OrderRepository orderRepository) {
+		this.orderRepository = orderRepository;
+	}
+
+	public List<OrderView> findAll(User user) {
+		List<OrderView> orders = orderRepository.findViewsByUser(user);
+		if (!orders.isEmpty()) {
+			attachLines(orders, orderRepository.findLinesByUser(user));
+		}
+		return orders;
+	}
+
+	/**
+	 * Returns up to {@code size} orders older than {@code before}, newest first, optionally limited
+	 * to orders created in {@code [from, to)}.
+	 */
+	public OrderPage findPage(User user, long before, int size, Instant from, Instant to) {
+		Pageable limit = PageRequest.of(0, size + 1);
+		List<OrderView> orders = from == null && to == null
+				? orderRepository.findViewPageByUser(user, before, limit)
+				: orderRepository.findViewPageByUserAndCreatedAt(user, before,
+						from != null ? from : Instant.EPOCH, to != null ? to : Instant.now().plusSeconds(1), limit);
+		Long nextCursor = null;
+		if (orders.size() > size) {
+			orders = orders.subList(0, size);
+			nextCursor = orders.get(size - 1).getId();
+		}
+		if (!orders.isEmpty()) {
+			List<Long> orderIds = new ArrayList<>(orders.size());
+			orders.forEach(order -> orderIds.add(order.getId()));
+			attachLines(orders, orderRepository.findLinesByOrderIds(orderIds));
+		}
+		return new OrderPage(orders, nextCursor);
+	}
+
+	private void attachLines(List<OrderView> orders, List<OrderLineView> lines) {
+		Map<Long, OrderView> ordersById = new HashMap<>();
+		orders.forEach(order -> ordersById.put(order.getId(), order));
+		attach(ordersById, lines);
+		List<Long> legacyOrderIds = new ArrayList<>();
+		for (OrderView order : orders) {
+			if (order.getLines().isEmpty()) {
+				legacyOrderIds.add(order.getId());
+			}
+		}
+		if (!legacyOrderIds.isEmpty()) {
+			attach(ordersById, orderRepository.findLegacyLinesByOrderIds(legacyOrderIds));
+		}
+	}
+
+	private static void attach(Map<Long, OrderView> ordersById, List<OrderLineView> lines) {
+		for (OrderLineView line : lines) {
+			OrderView order = ordersById.get(line.getOrderId());
+			if (order != null) {
+				order.getLines().add(line);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.demo.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+
+/**
+ * Remembers a cheap version tag (order count and last order id) of each user's order history,
+ * so unchanged history can be recognised from a request's ETag alone. Writes are tracked per lock
+ * stripe, so an order only holds back caching for the users sharing its user's stripe.
+ */
+@Service
+public class OrderHistoryVersions {
+
+	private static final int LOCK_STRIPES = 1024;
+
+	private final OrderRepository orderRepository;
+	private final BoundedCache<String, String> etagsByUsername;
+	private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+	private final AtomicLongArray generations = new AtomicLongArray(locks.size());
+
+	public OrderHistoryVersions(OrderRepository orderRepository, CacheRegistry cacheRegistry,
+			@Value("${order.history.etag-cache.max-size:10000}") int maxSize,
+			@Value("${order.history.etag-cache.ttl-seconds:3600}") long ttlSeconds) {
+		this.orderRepository = orderRepository;
+		this.etagsByUsername = cacheRegistry.create("order.history.etags", maxSize, ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Returns the current ETag of the user's history if it is known without a database round trip.
+	 */
+	public String getCachedEtag(String username) {
+		return etagsByUsername.get(username);
+	}
+
+	public String getEtag(User user) {
+		String etag = etagsByUsername.get(user.getUsername());
+		if (etag == null) {
+			int stripe = locks.indexOf(user.getUsername());
+			long generationBefore = generations.get(stripe);
+			Long lastOrderId = orderRepository.findLastOrderIdByUser(user);
+			etag = "\"" + orderRepository.countByUser(user) + "-" + (lastOrderId == null ? 0 : lastOrderId) + "\"";
+			// don't cache a tag computed while an order was being written, it may already be stale;
+			// checking and caching under the user's lock keeps historyChanged from running in between
+			Lock lock = locks.get(user.getUsername());
+			lock.lock();
+			try {
+				if (generations.get(stripe) == generationBefore) {
+					etagsByUsername.put(user.getUsername(), etag);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return etag;
+	}
+
+	/**
+	 * Must be called after an order has been written for the user.
+	 */
+	public void historyChanged(String username) {
+		Lock lock = locks.get(username);
+		lock.lock();
+		try {
+			generations.incrementAndGet(locks.indexOf(username));
+			etagsByUsername.invalidate(username);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
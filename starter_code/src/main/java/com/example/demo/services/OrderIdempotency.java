@@ -0,0 +1,78 @@
+package com.example.demo.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+
+/**
+ * Makes order submission idempotent per client supplied key, so a retried submission returns
+ * the order written by the first one instead of writing another.
+ * <p>
+ * Orders submitted with a key are remembered for {@code order.idempotency.ttl-seconds}, so a retry
+ * within that window is answered from memory. Older keys are found through the key stored on the
+ * order, which is unique per user and also catches retries racing on another instance.
+ */
+@Service
+public class OrderIdempotency {
+
+	private static final int LOCK_STRIPES = 64;
+
+	private final OrderRepository orderRepository;
+	private final BoundedCache<String, UserOrder> ordersByKey;
+	private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+	public OrderIdempotency(OrderRepository orderRepository, CacheRegistry cacheRegistry,
+			@Value("${order.idempotency.max-size:100000}") int maxSize,
+			@Value("${order.idempotency.ttl-seconds:86400}") long ttlSeconds) {
+		this.orderRepository = orderRepository;
+		this.ordersByKey = cacheRegistry.create("order.idempotency-keys", maxSize, ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Returns the order already submitted by the user with this key, or submits one and remembers
+	 * it. The submission must store the key on the order it writes.
+	 */
+	public UserOrder submitOnce(User user, String idempotencyKey, Supplier<UserOrder> submission) {
+		String cacheKey = user.getId() + ":" + idempotencyKey;
+		UserOrder order = ordersByKey.get(cacheKey);
+		if (order != null) {
+			return order;
+		}
+		Lock lock = locks.get(cacheKey);
+		lock.lock();
+		try {
+			order = ordersByKey.get(cacheKey);
+			if (order == null) {
+				order = orderRepository.findByUserAndIdempotencyKey(user, idempotencyKey);
+			}
+			if (order == null) {
+				try {
+					order = submission.get();
+				} catch (DataIntegrityViolationException e) {
+					// the same key was submitted concurrently elsewhere and won
+					order = orderRepository.findByUserAndIdempotencyKey(user, idempotencyKey);
+					if (order == null) {
+						throw e;
+					}
+				}
+			} else {
+				SareetaApplication.logger.info("[OrderIdempotency] Replaying order " + order.getId() + " for user " + user.getUsername());
+			}
+			ordersByKey.put(cacheKey, order);
+			return order;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
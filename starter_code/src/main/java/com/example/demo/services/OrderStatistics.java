@@ -0,0 +1,65 @@
+package com.example.demo.services;
+
+import java.math.BigDecimal;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.Money;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderStats;
+import com.example.demo.model.persistence.repositories.JdbcOrderRepository;
+import com.example.demo.model.persistence.repositories.UserOrderStatsRepository;
+
+/**
+ * Per-user order count, lifetime total and last order time, kept as one row per user and
+ * updated in the transaction that writes each order, so reading them is a primary key lookup.
+ * <p>
+ * The row is created with the user. Users who existed before the totals did have no row; it is
+ * computed from their orders on their next order, while reads compute the totals without
+ * storing them, so a read never writes and never competes with an order for the row.
+ */
+@Service
+public class OrderStatistics {
+
+	private final UserOrderStatsRepository userOrderStatsRepository;
+	private final JdbcOrderRepository jdbcOrderRepository;
+
+	public OrderStatistics(UserOrderStatsRepository userOrderStatsRepository, JdbcOrderRepository jdbcOrderRepository) {
+		this.userOrderStatsRepository = userOrderStatsRepository;
+		this.jdbcOrderRepository = jdbcOrderRepository;
+	}
+
+	/**
+	 * Creates the zero totals of a new user. Must run in the transaction that writes the user.
+	 */
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void userCreated(User user) {
+		UserOrderStats stats = new UserOrderStats();
+		stats.setUserId(user.getId());
+		userOrderStatsRepository.save(stats);
+	}
+
+	/**
+	 * Adds a just written order to its user's totals. Must run in the transaction that wrote it.
+	 */
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void orderPlaced(UserOrder order) {
+		long userId = order.getUser().getId();
+		BigDecimal total = Money.toBigDecimal(order.getTotalCents());
+		if (userOrderStatsRepository.addOrder(userId, total, order.getCreatedAt()) > 0) {
+			return;
+		}
+		// if a concurrent order created the row first, this order is simply added to it
+		jdbcOrderRepository.insertStatsIfAbsent(userId, order.getId());
+		userOrderStatsRepository.addOrder(userId, total, order.getCreatedAt());
+	}
+
+	@Transactional(readOnly = true)
+	public UserOrderStats getStats(User user) {
+		return userOrderStatsRepository.findById(user.getId())
+				.orElseGet(() -> jdbcOrderRepository.sumOrders(user.getId(), null));
+	}
+}
@@ -0,0 +1,228 @@
+package com.example.demo.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderSubmission;
+
+/**
+ * Accepts orders into a bounded in-memory queue and writes them from a small pool of workers.
+ * The request thread only snapshots the cart; each worker takes up to {@code order.submission.batch-size}
+ * queued orders at a time and writes them in one transaction. If a batch fails, its orders are
+ * retried one by one so a single bad order does not fail the others.
+ * Submission states are kept for {@code order.submission.status-ttl-seconds} for polling.
+ */
+@Service
+public class OrderSubmissionQueue {
+
+	private static final long POLL_MILLIS = 500;
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+	/** What the worker needs to write the order, detached from the request's persistence context. */
+	private static final class PendingOrder {
+		final String submissionId;
+		final Instant submittedAt;
+		final String username;
+		final long userId;
+		final List<OrderLine> lines;
+		final long totalCents;
+
+		PendingOrder(String submissionId, Instant submittedAt, User user, List<OrderLine> lines, long totalCents) {
+			this.submissionId = submissionId;
+			this.submittedAt = submittedAt;
+			this.username = user.getUsername();
+			this.userId = user.getId();
+			this.lines = lines;
+			this.totalCents = totalCents;
+		}
+	}
+
+	private final OrderWriter orderWriter;
+	private final OrderHistoryVersions orderHistoryVersions;
+	private final EntityManager entityManager;
+	private final TransactionTemplate transactionTemplate;
+	private final BlockingQueue<PendingOrder> queue;
+	private final BoundedCache<String, OrderSubmission> submissions;
+	private final ExecutorService workers;
+	private final int batchSize;
+	/** Held shared while queueing and exclusively to stop, so no order is queued after the final drain. */
+	private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+	private volatile boolean running = true;
+
+	public OrderSubmissionQueue(OrderWriter orderWriter, OrderHistoryVersions orderHistoryVersions,
+			EntityManager entityManager, PlatformTransactionManager transactionManager, CacheRegistry cacheRegistry,
+			@Value("${order.submission.queue-size:10000}") int queueSize,
+			@Value("${order.submission.workers:2}") int workerCount,
+			@Value("${order.submission.batch-size:100}") int batchSize,
+			@Value("${order.submission.status-ttl-seconds:3600}") long statusTtlSeconds) {
+		this.orderWriter = orderWriter;
+		this.orderHistoryVersions = orderHistoryVersions;
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.queue = new LinkedBlockingQueue<>(queueSize);
+		this.submissions = cacheRegistry.create("order.submissions", Math.max(queueSize * 10, 1000),
+				statusTtlSeconds, TimeUnit.SECONDS);
+		this.batchSize = batchSize;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "order-submission-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < workerCount; i++) {
+			workers.execute(this::work);
+		}
+	}
+
+	/**
+	 * Snapshots the cart and queues the order, or returns null if the queue is full.
+	 */
+	public OrderSubmission submit(User user, Cart cart) {
+		List<OrderLine> lines = new ArrayList<>();
+		for (CartLine line : cart.getLines()) {
+			lines.add(OrderLine.of(line));
+		}
+		PendingOrder pending = new PendingOrder(UUID.randomUUID().toString(), Instant.now(), user, lines, cart.getTotalCents());
+		OrderSubmission queued = new OrderSubmission(pending.submissionId, pending.username, OrderSubmission.Status.QUEUED, pending.submittedAt, null, null);
+		submissions.put(pending.submissionId, queued);
+		boolean accepted;
+		acceptLock.readLock().lock();
+		try {
+			accepted = running && queue.offer(pending);
+		} finally {
+			acceptLock.readLock().unlock();
+		}
+		if (!accepted) {
+			submissions.invalidate(pending.submissionId);
+			return null;
+		}
+		return queued;
+	}
+
+	/**
+	 * Returns the submission, or null if it is unknown or was submitted by another user.
+	 */
+	public OrderSubmission getSubmission(String submissionId, String username) {
+		OrderSubmission submission = submissions.get(submissionId);
+		return submission != null && submission.getUsername().equals(username) ? submission : null;
+	}
+
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Stops taking orders, lets the workers finish the batches they are writing and then writes
+	 * whatever is still queued.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		acceptLock.writeLock().lock();
+		try {
+			running = false;
+		} finally {
+			acceptLock.writeLock().unlock();
+		}
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				SareetaApplication.logger.warn("[OrderSubmissionQueue] Workers still writing after " + SHUTDOWN_TIMEOUT_SECONDS + "s");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		List<PendingOrder> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		if (!remaining.isEmpty()) {
+			SareetaApplication.logger.info("[OrderSubmissionQueue] Writing " + remaining.size() + " queued orders before shutdown");
+			write(remaining);
+		}
+	}
+
+	private void work() {
+		List<PendingOrder> batch = new ArrayList<>(batchSize);
+		while (running) {
+			try {
+				PendingOrder first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				write(batch);
+			} catch (InterruptedException e) {
+				// shutdown() writes whatever is still queued
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				SareetaApplication.logger.error("[OrderSubmissionQueue] Unexpected failure writing orders", e);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void write(List<PendingOrder> batch) {
+		try {
+			List<UserOrder> orders = transactionTemplate.execute(status -> {
+				List<UserOrder> written = new ArrayList<>(batch.size());
+				for (PendingOrder pending : batch) {
+					written.add(save(pending));
+				}
+				return written;
+			});
+			for (int i = 0; i < batch.size(); i++) {
+				completed(batch.get(i), orders.get(i));
+			}
+		} catch (RuntimeException batchFailure) {
+			SareetaApplication.logger.warn("[OrderSubmissionQueue] Batch of " + batch.size() + " orders failed, writing them one by one");
+			for (PendingOrder pending : batch) {
+				try {
+					completed(pending, transactionTemplate.execute(status -> save(pending)));
+				} catch (RuntimeException e) {
+					SareetaApplication.logger.error("[OrderSubmissionQueue] Failed to write order for user " + pending.username, e);
+					submissions.put(pending.submissionId, new OrderSubmission(pending.submissionId, pending.username,
+							OrderSubmission.Status.FAILED, pending.submittedAt, null, "order could not be written"));
+				}
+			}
+		}
+	}
+
+	private UserOrder save(PendingOrder pending) {
+		UserOrder order = UserOrder.create(entityManager.getReference(User.class, pending.userId),
+				new ArrayList<>(pending.lines), pending.totalCents, pending.submittedAt);
+		return orderWriter.save(order);
+	}
+
+	private void completed(PendingOrder pending, UserOrder order) {
+		orderHistoryVersions.historyChanged(pending.username);
+		submissions.put(pending.submissionId, new OrderSubmission(pending.submissionId, pending.username,
+				OrderSubmission.Status.COMPLETED, pending.submittedAt, order.getId(), null));
+	}
+}
@@ -0,0 +1,29 @@
+package com.example.demo.services;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+
+/**
+ * Writes orders together with everything derived from them, in one transaction.
+ */
+@Service
+public class OrderWriter {
+
+	private final OrderRepository orderRepository;
+	private final OrderStatistics orderStatistics;
+
+	public OrderWriter(OrderRepository orderRepository, OrderStatistics orderStatistics) {
+		this.orderRepository = orderRepository;
+		this.orderStatistics = orderStatistics;
+	}
+
+	@Transactional
+	public UserOrder save(UserOrder order) {
+		orderRepository.save(order);
+		orderStatistics.orderPlaced(order);
+		return order;
+	}
+}
@@ -0,0 +1,38 @@
+package com.example.demo.services;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed pool of locks addressed by key hash. Work on the same key is serialised while work
+ * on different keys only contends when the keys happen to share a stripe.
+ */
+public class StripedLocks {
+
+	private final Lock[] locks;
+
+	public StripedLocks(int minStripes) {
+		int stripes = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+		this.locks = new Lock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	public Lock get(Object key) {
+		return locks[indexOf(key)];
+	}
+
+	/**
+	 * The stripe of the key, for callers that keep per-stripe state next to the locks.
+	 */
+	public int indexOf(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return h & (locks.length - 1);
+	}
+
+	public int size() {
+		return locks.length;
+	}
+}
@@ -0,0 +1,86 @@
+package com.example.demo.services;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.security.TokenRevocations;
+
+/**
+ * Writes user accounts together with the rows that belong to them, in one transaction, so a
+ * failed write leaves nothing behind. The cached user is only invalidated once the transaction
+ * commits: invalidating earlier would let a concurrent lookup read the old row and cache it again.
+ */
+@Service
+public class UserAccounts {
+
+	private final UserRepository userRepository;
+	private final CartRepository cartRepository;
+	private final UserCache userCache;
+	private final OrderStatistics orderStatistics;
+	private final TokenRevocations tokenRevocations;
+
+	public UserAccounts(UserRepository userRepository, CartRepository cartRepository, UserCache userCache,
+			OrderStatistics orderStatistics, TokenRevocations tokenRevocations) {
+		this.userRepository = userRepository;
+		this.cartRepository = cartRepository;
+		this.userCache = userCache;
+		this.orderStatistics = orderStatistics;
+		this.tokenRevocations = tokenRevocations;
+	}
+
+	/**
+	 * Creates the user, their empty cart and their zero order totals.
+	 *
+	 * @throws org.springframework.dao.DataIntegrityViolationException if the username is taken
+	 */
+	@Transactional
+	public User createUser(String username, String encodedPassword) {
+		User user = new User();
+		user.setUsername(username);
+		Cart cart = new Cart();
+		cartRepository.save(cart);
+		user.setCart(cart);
+		user.setPassword(encodedPassword);
+		userRepository.save(user);
+		orderStatistics.userCreated(user);
+		afterCommit(() -> userCache.userChanged(user));
+		return user;
+	}
+
+	/**
+	 * Stores the user's new password and revokes every token issued under the old one, by bumping
+	 * their token version.
+	 *
+	 * @return the new token version, to be carried by the tokens issued from now on, or null if
+	 *         the user does not exist
+	 */
+	@Transactional
+	public Integer changePassword(String username, String encodedPassword) {
+		if (userRepository.changePassword(username, encodedPassword) == 0) {
+			return null;
+		}
+		Integer tokenVersion = userRepository.findTokenVersionByUsername(username);
+		tokenRevocations.revokeAllTokens(username, tokenVersion);
+		afterCommit(() -> userCache.userChanged(username));
+		return tokenVersion;
+	}
+
+	private static void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.example.demo.services;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+
+/**
+ * Read-through cache of users by username and by id, used to resolve the caller of every request.
+ * <p>
+ * Only an immutable snapshot of each user is cached; every lookup returns a new detached user
+ * built from it, so no entity instance is shared between requests. The returned user's cart only
+ * identifies the cart, whose contents must be read through {@link CartService}. Anything that
+ * writes a user must call {@link #userChanged(User)} once the write has committed.
+ */
+@Service
+public class UserCache {
+
+	private static final int LOCK_STRIPES = 64;
+
+	/** The cached state of a user, holding no reference to an entity or persistence context. */
+	private static final class Snapshot {
+		final long id;
+		final String username;
+		final String password;
+		final boolean admin;
+		final int tokenVersion;
+		final Long cartId;
+
+		Snapshot(User user) {
+			this.id = user.getId();
+			this.username = user.getUsername();
+			this.password = user.getPassword();
+			this.admin = user.isAdmin();
+			this.tokenVersion = user.getTokenVersion();
+			this.cartId = user.getCart() == null ? null : user.getCart().getId();
+		}
+
+		User toUser() {
+			User user = new User();
+			user.setId(id);
+			user.setUsername(username);
+			user.setPassword(password);
+			user.setAdmin(admin);
+			user.setTokenVersion(tokenVersion);
+			if (cartId != null) {
+				Cart cart = new Cart();
+				cart.setId(cartId);
+				user.setCart(cart);
+			}
+			return user;
+		}
+	}
+
+	private final UserRepository userRepository;
+	private final BoundedCache<String, Snapshot> usersByUsername;
+	private final BoundedCache<Long, Snapshot> usersById;
+	private final AtomicLong generation = new AtomicLong();
+	private final StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+
+	public UserCache(UserRepository userRepository, CacheRegistry cacheRegistry,
+			@Value("${user.cache.max-size:10000}") int maxSize,
+			@Value("${user.cache.ttl-seconds:300}") long ttlSeconds) {
+		this.userRepository = userRepository;
+		this.usersByUsername = cacheRegistry.create("users.by-username", maxSize, ttlSeconds, TimeUnit.SECONDS);
+		this.usersById = cacheRegistry.create("users.by-id", maxSize, ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	public User findByUsername(String username) {
+		if (username == null) {
+			return null;
+		}
+		Snapshot snapshot = usersByUsername.get(username);
+		if (snapshot != null) {
+			return snapshot.toUser();
+		}
+		long generationBefore = generation.get();
+		User user = userRepository.findByUsername(username);
+		if (user != null) {
+			cache(user, generationBefore);
+		}
+		return user;
+	}
+
+	public Optional<User> findById(long id) {
+		Snapshot snapshot = usersById.get(id);
+		if (snapshot != null) {
+			return Optional.of(snapshot.toUser());
+		}
+		long generationBefore = generation.get();
+		Optional<User> loaded = userRepository.findById(id);
+		loaded.ifPresent(u -> cache(u, generationBefore));
+		return loaded;
+	}
+
+	public void userChanged(User user) {
+		Lock lock = locks.get(user.getUsername());
+		lock.lock();
+		try {
+			generation.incrementAndGet();
+			usersByUsername.invalidate(user.getUsername());
+			usersById.invalidate(user.getId());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Same as {@link #userChanged(User)} for writers that only know the username, such as the
+	 * password update query; the id entry is found through the cached snapshot.
+	 */
+	public void userChanged(String username) {
+		Lock lock = locks.get(username);
+		lock.lock();
+		try {
+			generation.incrementAndGet();
+			Snapshot snapshot = usersByUsername.get(username);
+			usersByUsername.invalidate(username);
+			if (snapshot != null) {
+				usersById.invalidate(snapshot.id);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clear() {
+		generation.incrementAndGet();
+		usersByUsername.clear();
+		usersById.clear();
+	}
+
+	/**
+	 * Caches the user unless a user was written since it was loaded, in which case it may already
+	 * be stale. The check and the writes hold the lock {@link #userChanged(User)} takes, so an
+	 * invalidation cannot slip in between them.
+	 */
+	private void cache(User user, long generationBefore) {
+		Snapshot snapshot = new Snapshot(user);
+		Lock lock = locks.get(snapshot.username);
+		lock.lock();
+		try {
+			if (generation.get() != generationBefore) {
+				return;
+			}
+			usersByUsername.put(snapshot.username, snapshot);
+			usersById.put(snapshot.id, snapshot);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
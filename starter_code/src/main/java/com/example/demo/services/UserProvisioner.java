@@ -0,0 +1,259 @@
+package com.example.demo.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.JdbcUserRepository;
+import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.responses.ProvisioningJob;
+import com.example.demo.model.responses.ProvisioningReport;
+
+/**
+ * Creates users in bulk, for migrations from partner systems, as background jobs run one at a
+ * time; at most {@code user.provisioning.max-queued-jobs} wait behind the running one. Job states
+ * are kept for {@code user.provisioning.job-ttl-seconds} for polling.
+ * <p>
+ * Every row is validated and checked against existing usernames before any password is hashed.
+ * The hashes are then computed on a small fixed pool, separate from the one serving logins and
+ * signups, at most one chunk ahead of the chunk being written: rows are written chunk by chunk
+ * in JDBC batches, one transaction per chunk, while the next chunk is hashed.
+ */
+@Service
+public class UserProvisioner {
+
+	private static final int PROGRESS_LOG_INTERVAL = 10;
+
+	private final JdbcUserRepository jdbcUserRepository;
+	private final BCryptPasswordEncoder bCryptPasswordEncoder;
+	private final TransactionTemplate transactionTemplate;
+	private final ThreadPoolExecutor hashingPool;
+	private final ThreadPoolExecutor jobRunner;
+	private final BoundedCache<String, ProvisioningJob> jobs;
+	private final int chunkSize;
+
+	public UserProvisioner(JdbcUserRepository jdbcUserRepository, BCryptPasswordEncoder bCryptPasswordEncoder,
+			PlatformTransactionManager transactionManager, CacheRegistry cacheRegistry,
+			@Value("${user.provisioning.chunk-size:1000}") int chunkSize,
+			@Value("${user.provisioning.hash-threads:2}") int hashThreads,
+			@Value("${user.provisioning.max-queued-jobs:4}") int maxQueuedJobs,
+			@Value("${user.provisioning.job-ttl-seconds:86400}") long jobTtlSeconds) {
+		this.jdbcUserRepository = jdbcUserRepository;
+		this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.chunkSize = chunkSize;
+		this.jobs = cacheRegistry.create("user.provisioning-jobs", 1000, jobTtlSeconds, TimeUnit.SECONDS);
+		AtomicInteger threadCount = new AtomicInteger();
+		// two chunks of hashes are in flight at most; running on the caller beyond that only slows the job down
+		this.hashingPool = new ThreadPoolExecutor(Math.max(1, hashThreads), Math.max(1, hashThreads), 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(2 * chunkSize),
+				runnable -> {
+					Thread thread = new Thread(runnable, "user-provisioning-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		this.jobRunner = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, maxQueuedJobs)),
+				runnable -> {
+					Thread thread = new Thread(runnable, "user-provisioning-job");
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Queues a provisioning job, or returns null if too many jobs are already waiting.
+	 */
+	public ProvisioningJob submit(List<CreateUserRequest> requests) {
+		String jobId = UUID.randomUUID().toString();
+		Instant submittedAt = Instant.now();
+		ProvisioningJob queued = new ProvisioningJob(jobId, ProvisioningJob.Status.QUEUED, submittedAt, 0, 0, null, null);
+		jobs.put(jobId, queued);
+		try {
+			jobRunner.execute(() -> run(jobId, submittedAt, requests));
+		} catch (RejectedExecutionException e) {
+			jobs.invalidate(jobId);
+			return null;
+		}
+		return queued;
+	}
+
+	public ProvisioningJob getJob(String jobId) {
+		return jobs.get(jobId);
+	}
+
+	private void run(String jobId, Instant submittedAt, List<CreateUserRequest> requests) {
+		try {
+			jobs.put(jobId, new ProvisioningJob(jobId, ProvisioningJob.Status.RUNNING, submittedAt, 0, 0, null, null));
+			ProvisioningReport report = provision(requests, progress -> jobs.put(jobId, new ProvisioningJob(jobId,
+					ProvisioningJob.Status.RUNNING, submittedAt, progress.getCreated(), progress.getRejected(), null, null)));
+			jobs.put(jobId, new ProvisioningJob(jobId, ProvisioningJob.Status.COMPLETED, submittedAt,
+					report.getCreated(), report.getRejected(), report, null));
+		} catch (RuntimeException e) {
+			SareetaApplication.logger.error("[UserProvisioner] Provisioning job " + jobId + " failed", e);
+			ProvisioningJob last = jobs.get(jobId);
+			jobs.put(jobId, new ProvisioningJob(jobId, ProvisioningJob.Status.FAILED, submittedAt,
+					last == null ? 0 : last.getCreated(), last == null ? 0 : last.getRejected(), null, "provisioning failed"));
+		}
+	}
+
+	/**
+	 * Provisions the users on the calling thread, reporting progress after every chunk.
+	 */
+	public ProvisioningReport provision(List<CreateUserRequest> requests, Consumer<ProvisioningReport> progress) {
+		ProvisioningReport report = new ProvisioningReport();
+		long start = System.nanoTime();
+
+		List<Integer> accepted = new ArrayList<>();
+		Set<String> usernames = new HashSet<>();
+		for (int i = 0; i < requests.size(); i++) {
+			CreateUserRequest request = requests.get(i);
+			ProvisioningReport.Result result = new ProvisioningReport.Result();
+			result.setUsername(request == null ? null : request.getUsername());
+			report.getResults().add(result);
+			String error = validate(request);
+			if (error == null && !usernames.add(request.getUsername())) {
+				error = "duplicate username in request";
+			}
+			if (error != null) {
+				reject(report, result, error);
+			} else {
+				accepted.add(i);
+			}
+		}
+		accepted = withoutExistingUsernames(requests, accepted, report);
+
+		List<CompletableFuture<String>> nextHashes = hash(requests, accepted.subList(0, Math.min(chunkSize, accepted.size())));
+		for (int from = 0; from < accepted.size(); from += chunkSize) {
+			int to = Math.min(from + chunkSize, accepted.size());
+			List<CompletableFuture<String>> hashes = nextHashes;
+			nextHashes = hash(requests, accepted.subList(to, Math.min(to + chunkSize, accepted.size())));
+			writeChunk(requests, accepted.subList(from, to), hashes, report, start);
+			progress.accept(report);
+		}
+
+		report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+		report.setUsersPerSecond(throughput(report.getCreated(), start));
+		SareetaApplication.logger.info("[UserProvisioner] Created " + report.getCreated() + " users, rejected "
+				+ report.getRejected() + " in " + report.getElapsedMillis() + " ms");
+		return report;
+	}
+
+	private List<CompletableFuture<String>> hash(List<CreateUserRequest> requests, List<Integer> indexes) {
+		if (indexes.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<CompletableFuture<String>> hashes = new ArrayList<>(indexes.size());
+		for (int index : indexes) {
+			String password = requests.get(index).getPassword();
+			hashes.add(CompletableFuture.supplyAsync(() -> bCryptPasswordEncoder.encode(password), hashingPool));
+		}
+		return hashes;
+	}
+
+	private List<Integer> withoutExistingUsernames(List<CreateUserRequest> requests, List<Integer> indexes,
+			ProvisioningReport report) {
+		List<Integer> remaining = new ArrayList<>(indexes.size());
+		for (int from = 0; from < indexes.size(); from += chunkSize) {
+			List<Integer> chunk = indexes.subList(from, Math.min(from + chunkSize, indexes.size()));
+			List<String> usernames = new ArrayList<>(chunk.size());
+			for (int index : chunk) {
+				usernames.add(requests.get(index).getUsername());
+			}
+			Set<String> existing = jdbcUserRepository.findExistingUsernames(usernames);
+			for (int index : chunk) {
+				if (existing.contains(requests.get(index).getUsername())) {
+					reject(report, report.getResults().get(index), "username already exists");
+				} else {
+					remaining.add(index);
+				}
+			}
+		}
+		return remaining;
+	}
+
+	private void writeChunk(List<CreateUserRequest> requests, List<Integer> indexes,
+			List<CompletableFuture<String>> hashes, ProvisioningReport report, long start) {
+		List<User> users = new ArrayList<>(indexes.size());
+		for (int i = 0; i < indexes.size(); i++) {
+			User user = new User();
+			user.setUsername(requests.get(indexes.get(i)).getUsername());
+			user.setPassword(hashes.get(i).join());
+			user.setCart(new Cart());
+			users.add(user);
+		}
+		try {
+			transactionTemplate.executeWithoutResult(status -> jdbcUserRepository.insertAllWithCarts(users));
+			for (int i = 0; i < indexes.size(); i++) {
+				report.getResults().get(indexes.get(i)).setId(users.get(i).getId());
+			}
+			report.setCreated(report.getCreated() + users.size());
+		} catch (DataAccessException e) {
+			String error = "chunk rejected: " + e.getMostSpecificCause().getMessage();
+			for (int index : indexes) {
+				reject(report, report.getResults().get(index), error);
+			}
+		}
+		report.setChunks(report.getChunks() + 1);
+		if (report.getChunks() % PROGRESS_LOG_INTERVAL == 0) {
+			SareetaApplication.logger.info("[UserProvisioner] Created " + report.getCreated() + " users so far ("
+					+ throughput(report.getCreated(), start) + " users/s)");
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		jobRunner.shutdownNow();
+		hashingPool.shutdownNow();
+	}
+
+	private static String validate(CreateUserRequest request) {
+		if (request == null || request.getUsername() == null || request.getUsername().trim().isEmpty()) {
+			return "username is required";
+		}
+		if (request.getPassword() == null || request.getPassword().length() < 7) {
+			return "password must be at least 7 characters";
+		}
+		if (!request.getPassword().equals(request.getConfirmPassword())) {
+			return "password and confirmation do not match";
+		}
+		return null;
+	}
+
+	private static void reject(ProvisioningReport report, ProvisioningReport.Result result, String error) {
+		result.setError(error);
+		report.setRejected(report.getRejected() + 1);
+	}
+
+	private static long throughput(long users, long start) {
+		long elapsedNanos = Math.max(1, System.nanoTime() - start);
+		return users * 1_000_000_000L / elapsedNanos;
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.demo;
+
+import com.example.demo.cache.BloomFilter;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class BloomFilterUnitTests {
+
+    @Test
+    public void givenAddedKeys_whenMightContain_thenNeverMiss() {
+        // given
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        String[] keys = new String[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID().toString();
+            filter.add(keys[i]);
+        }
+
+        // when / then
+        for (String key : keys) {
+            Assertions.assertTrue(filter.mightContain(key));
+        }
+    }
+
+    @Test
+    public void givenFilledFilter_whenMightContainOtherKeys_thenFalsePositivesStayRare() {
+        // given
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add(UUID.randomUUID().toString());
+        }
+
+        // when
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+
+        // then
+        Assertions.assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void givenKeyAddedWithPrefix_whenMightContainConcatenation_thenFound() {
+        // given
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        String[] keys = new String[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = UUID.randomUUID().toString();
+            filter.add("user:", keys[i]);
+        }
+
+        // when / then
+        for (String key : keys) {
+            Assertions.assertTrue(filter.mightContain("user:" + key));
+            Assertions.assertTrue(filter.mightContain("user:", key));
+        }
+    }
+}
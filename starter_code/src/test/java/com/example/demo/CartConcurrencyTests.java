@@ -0,0 +1,242 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.services.CartService;
+import com.example.demo.services.StripedLocks;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Hammers CartService from many threads against the real database.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CartConcurrencyTests {
+    private static final int THREADS = 8;
+    private static final int ADDS_PER_THREAD = 25;
+    // mirrors the stripe count CartService locks users with
+    private static final int CART_LOCK_STRIPES = 1024;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Item testItem;
+
+    @Before
+    public void setup() {
+        Item item = new Item();
+        item.setName("Concurrency Widget");
+        item.setDescription("A widget added from many threads");
+        item.setPrice(BigDecimal.valueOf(1.25));
+        testItem = itemRepository.save(item);
+    }
+
+    @Test
+    public void givenConcurrentMutationsForSameUser_whenAddToCart_thenNoUpdateIsLost() throws Exception {
+        // given
+        String username = createUser();
+
+        // when
+        long elapsedNanos = runConcurrently(i -> username);
+
+        // then
+        Assertions.assertEquals(THREADS * ADDS_PER_THREAD, quantityInCart(username));
+        logThroughput("same user", elapsedNanos);
+    }
+
+    @Test
+    public void givenConcurrentMutationsForDifferentUsers_whenAddToCart_thenEveryCartIsComplete() throws Exception {
+        // given
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            usernames.add(createUser());
+        }
+
+        // when
+        long elapsedNanos = runConcurrently(usernames::get);
+
+        // then
+        for (String username : usernames) {
+            Assertions.assertEquals(ADDS_PER_THREAD, quantityInCart(username));
+        }
+        logThroughput("different users", elapsedNanos);
+    }
+
+    @Test
+    public void givenMutationInProgressForOneUser_whenAnotherUserAddsToCart_thenItIsNotBlocked() throws Exception {
+        // given
+        String blockedUsername = createUser();
+        String otherUsername = createUserOnDifferentStripe(blockedUsername);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> blocked = executor.submit(() -> cartService.modify(userRepository.findByUsername(blockedUsername), cart -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cart.addItem(testItem, 1);
+        }));
+        try {
+            Assertions.assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+            // when
+            Future<?> other = executor.submit(() -> cartService.modify(userRepository.findByUsername(otherUsername),
+                    cart -> cart.addItem(testItem, 1)));
+
+            // then
+            other.get(10, TimeUnit.SECONDS);
+            Assertions.assertFalse(blocked.isDone());
+        } finally {
+            release.countDown();
+            blocked.get(10, TimeUnit.SECONDS);
+            executor.shutdown();
+        }
+        Assertions.assertEquals(1, quantityInCart(blockedUsername));
+        Assertions.assertEquals(1, quantityInCart(otherUsername));
+    }
+
+    @Test
+    public void givenOpenEntityManagerAndConflictingWrite_whenAddToCart_thenRetryAppliesToLatestState() throws Exception {
+        // given
+        String username = createUser();
+        AtomicInteger attempts = new AtomicInteger();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            User user = userRepository.findByUsername(username);
+
+            // when
+            cartService.modify(user, cart -> {
+                if (attempts.incrementAndGet() == 1) {
+                    bumpVersionElsewhere(writer, cart.getId());
+                }
+                cart.addItem(testItem, 1);
+            });
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+            writer.shutdown();
+        }
+
+        // then
+        Assertions.assertEquals(2, attempts.get());
+        Assertions.assertEquals(1, quantityInCart(username));
+    }
+
+    private void bumpVersionElsewhere(ExecutorService writer, Long cartId) {
+        try {
+            writer.submit(() -> jdbcTemplate.update("update cart set version = version + 1 where id = ?", cartId)).get();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long runConcurrently(IntFunction<String> usernameForThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String username = usernameForThread.apply(t);
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ADDS_PER_THREAD; i++) {
+                    User user = userRepository.findByUsername(username);
+                    cartService.modify(user, cart -> cart.addItem(testItem, 1));
+                }
+                return null;
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+        return elapsedNanos;
+    }
+
+    private String createUser() {
+        Cart cart = cartRepository.save(new Cart());
+        User user = new User();
+        user.setUsername("concurrency-" + UUID.randomUUID());
+        user.setPassword("not-a-real-hash");
+        user.setCart(cart);
+        return userRepository.save(user).getUsername();
+    }
+
+    private String createUserOnDifferentStripe(String username) {
+        StripedLocks locks = new StripedLocks(CART_LOCK_STRIPES);
+        String candidate;
+        do {
+            candidate = "concurrency-" + UUID.randomUUID();
+        } while (locks.get(candidate) == locks.get(username));
+        Cart cart = cartRepository.save(new Cart());
+        User user = new User();
+        user.setUsername(candidate);
+        user.setPassword("not-a-real-hash");
+        user.setCart(cart);
+        return userRepository.save(user).getUsername();
+    }
+
+    private int quantityInCart(String username) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                userRepository.findByUsername(username).getCart().getLine(testItem.getId()).getQuantity());
+    }
+
+    private void logThroughput(String scenario, long elapsedNanos) {
+        long mutations = (long) THREADS * ADDS_PER_THREAD;
+        SareetaApplication.logger.info("[CartConcurrencyTests] " + scenario + ": " + mutations + " mutations, "
+                + (mutations * 1_000_000_000L / Math.max(1, elapsedNanos)) + " mutations/s");
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.demo;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -12,12 +13,16 @@ import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.requests.BatchModifyCartRequest;
+import com.example.demo.model.requests.CartOperation;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartResponse;
 import com.example.demo.security.JWTAuthenticationFilter;
+import com.example.demo.services.UserCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +48,9 @@ public class CartControllerUnitTests {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private UserCache userCache;
+
     @MockBean
     private UserRepository userRepository;
 
@@ -58,6 +66,7 @@ public class CartControllerUnitTests {
 
     @Before
     public void setup() {
+        userCache.clear();
         testUser = getTestUser();
         testItem = getTestItem();
         testCart = testUser.getCart();
@@ -66,7 +75,7 @@ public class CartControllerUnitTests {
     @Test
     public void givenAllReqs_whenAddToCart_thenReturnCorrectCart() throws Exception {
         // given
-        int quantity = testCart.getItems().size();
+        int quantity = testCart.getLine(testItem.getId()).getQuantity();
         ModifyCartRequest testModifyCartRequest = getTestModifyCartRequest(quantity);
 
         String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
@@ -82,12 +91,14 @@ public class CartControllerUnitTests {
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andReturn();
-        Cart returnedCart = mvcResultToCart(mvcResult);
+        CartResponse returnedCart = mvcResultToCart(mvcResult);
 
         // then
-        Assertions.assertEquals(testCart.getUser().getUsername(), returnedCart.getUser().getUsername());
+        Assertions.assertEquals(testCart.getId(), returnedCart.getCartId());
         Assertions.assertEquals(testCart.getTotal(), returnedCart.getTotal());
-        Assertions.assertEquals(testCart.getItems(), returnedCart.getItems());
+        Assertions.assertEquals(1, returnedCart.getLines().size());
+        Assertions.assertEquals(2 * quantity, getLine(returnedCart, testItem.getId()).getQuantity());
+        Assertions.assertEquals(testItem.getPrice(), getLine(returnedCart, testItem.getId()).getUnitPrice());
    }
 
     @Test
@@ -128,7 +139,7 @@ public class CartControllerUnitTests {
     @Test
     public void givenAllReqs_whenRemoveFromCart_thenReturnCorrectCart() throws Exception {
         // given
-        int quantity = testCart.getItems().size();
+        int quantity = testCart.getLine(testItem.getId()).getQuantity();
         ModifyCartRequest testModifyCartRequest = getTestModifyCartRequest(quantity);
 
         String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
@@ -144,12 +155,51 @@ public class CartControllerUnitTests {
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andReturn();
-        Cart returnedCart = mvcResultToCart(mvcResult);
+        CartResponse returnedCart = mvcResultToCart(mvcResult);
+
+        // then
+        Assertions.assertEquals(testCart.getId(), returnedCart.getCartId());
+        Assertions.assertEquals(0, returnedCart.getTotal().compareTo(BigDecimal.ZERO));
+        Assertions.assertEquals(0, returnedCart.getLines().size());
+    }
+
+    @Test
+    public void givenMoreUnitsThanInCart_whenRemoveFromCart_thenEmptyLine() throws Exception {
+        // given
+        ModifyCartRequest testModifyCartRequest = getTestModifyCartRequest(100);
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String requestString = objectMapper.writeValueAsString(testModifyCartRequest);
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(itemRepository.findById(testModifyCartRequest.getItemId())).willReturn(Optional.of(testItem));
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/cart/removeFromCart")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CartResponse returnedCart = mvcResultToCart(mvcResult);
 
         // then
-        Assertions.assertEquals(testCart.getUser().getUsername(), returnedCart.getUser().getUsername());
         Assertions.assertEquals(0, returnedCart.getTotal().compareTo(BigDecimal.ZERO));
-        Assertions.assertEquals(0, returnedCart.getItems().size());
+        Assertions.assertEquals(0, returnedCart.getLines().size());
+    }
+
+    @Test
+    public void givenZeroQuantity_whenAddToCart_thenReturnBadRequest() throws Exception {
+        // given
+        ModifyCartRequest testModifyCartRequest = getTestModifyCartRequest(0);
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String requestString = objectMapper.writeValueAsString(testModifyCartRequest);
+
+        // when / then
+        mvc.perform(post("/api/cart/addToCart")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -187,6 +237,96 @@ public class CartControllerUnitTests {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void givenBatchOperations_whenModifyCart_thenApplyAllInOrder() throws Exception {
+        // given
+        Item otherItem = getTestItem();
+        otherItem.setId(124L);
+        otherItem.setPrice(BigDecimal.valueOf(1.00));
+        BatchModifyCartRequest batchRequest = getTestBatchRequest(
+                getTestOperation(CartOperation.Type.SET, testItem.getId(), 1),
+                getTestOperation(CartOperation.Type.ADD, otherItem.getId(), 3),
+                getTestOperation(CartOperation.Type.REMOVE, otherItem.getId(), 1));
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String requestString = objectMapper.writeValueAsString(batchRequest);
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(itemRepository.findAllById(any())).willReturn(Arrays.asList(testItem, otherItem));
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/cart/batch")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CartResponse returnedCart = mvcResultToCart(mvcResult);
+
+        // then
+        Assertions.assertEquals(1, getLine(returnedCart, testItem.getId()).getQuantity());
+        Assertions.assertEquals(2, getLine(returnedCart, otherItem.getId()).getQuantity());
+        Assertions.assertEquals(0, returnedCart.getTotal().compareTo(new BigDecimal("7.99")));
+    }
+
+    @Test
+    public void givenDeltaRequested_whenModifyCart_thenReturnOnlyChangedLines() throws Exception {
+        // given
+        Item otherItem = getTestItem();
+        otherItem.setId(124L);
+        otherItem.setPrice(BigDecimal.valueOf(1.00));
+        testCart.addItem(otherItem, 2);
+        long versionBefore = testCart.getVersion();
+        BatchModifyCartRequest batchRequest = getTestBatchRequest(
+                getTestOperation(CartOperation.Type.SET, testItem.getId(), 0),
+                getTestOperation(CartOperation.Type.ADD, otherItem.getId(), 1));
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String requestString = objectMapper.writeValueAsString(batchRequest);
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(itemRepository.findAllById(any())).willReturn(Arrays.asList(testItem, otherItem));
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/cart/batch?delta=true")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        CartResponse returnedCart = mvcResultToCart(mvcResult);
+
+        // then
+        Assertions.assertTrue(returnedCart.isDelta());
+        Assertions.assertEquals(versionBefore, returnedCart.getPreviousVersion());
+        Assertions.assertEquals(2, returnedCart.getLines().size());
+        Assertions.assertEquals(0, getLine(returnedCart, testItem.getId()).getQuantity());
+        Assertions.assertEquals(3, getLine(returnedCart, otherItem.getId()).getQuantity());
+        Assertions.assertEquals(0, returnedCart.getTotal().compareTo(new BigDecimal("3.00")));
+    }
+
+    @Test
+    public void givenUnknownItemInBatch_whenModifyCart_thenReturnNotFoundAndKeepCart() throws Exception {
+        // given
+        BatchModifyCartRequest batchRequest = getTestBatchRequest(
+                getTestOperation(CartOperation.Type.SET, testItem.getId(), 0),
+                getTestOperation(CartOperation.Type.ADD, 999L, 1));
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String requestString = objectMapper.writeValueAsString(batchRequest);
+        int quantityBefore = testCart.getLine(testItem.getId()).getQuantity();
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(itemRepository.findAllById(any())).willReturn(Collections.singletonList(testItem));
+
+        // when
+        mvc.perform(post("/api/cart/batch")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+
+        // then
+        Assertions.assertEquals(quantityBefore, testCart.getLine(testItem.getId()).getQuantity());
+    }
+
     @Test
     public void givenNoJwt_whenAddToCart_thenReturnUnauthorized() throws Exception {
         // when / then
@@ -225,11 +365,7 @@ public class CartControllerUnitTests {
         Item testItem = getTestItem();
         testCart.setId(678L);
         testCart.setUser(user);
-        List<Item> cartItems = new ArrayList<>();
-        for (int i = 0; i < quantityOfTestItem; i++)
-            cartItems.add(testItem);
-        testCart.setItems(cartItems);
-        testCart.setTotal(testItem.getPrice().multiply(new BigDecimal(quantityOfTestItem)));
+        testCart.addItem(testItem, quantityOfTestItem);
         return testCart;
    }
 
@@ -243,8 +379,30 @@ public class CartControllerUnitTests {
         return testModifyCartRequest;
     }
 
-   private Cart mvcResultToCart(MvcResult result) throws Exception {
+    private CartOperation getTestOperation(CartOperation.Type type, long itemId, int quantity) {
+        CartOperation operation = new CartOperation();
+        operation.setType(type);
+        operation.setItemId(itemId);
+        operation.setQuantity(quantity);
+        return operation;
+    }
+
+    private BatchModifyCartRequest getTestBatchRequest(CartOperation... operations) {
+        BatchModifyCartRequest batchRequest = new BatchModifyCartRequest();
+        batchRequest.setUsername(getTestUser().getUsername());
+        batchRequest.setOperations(Arrays.asList(operations));
+        return batchRequest;
+    }
+
+   private CartResponse mvcResultToCart(MvcResult result) throws Exception {
        String contentAsString = result.getResponse().getContentAsString();
-       return objectMapper.readValue(contentAsString, Cart.class);
+       return objectMapper.readValue(contentAsString, CartResponse.class);
    }
+
+    private CartResponse.Line getLine(CartResponse cart, long itemId) {
+        return cart.getLines().stream()
+                .filter(line -> line.getItemId() == itemId)
+                .findFirst()
+                .orElse(null);
+    }
 }
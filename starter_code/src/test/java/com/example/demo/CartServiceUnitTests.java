@@ -0,0 +1,132 @@
+package com.example.demo;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.services.CartService;
+import java.math.BigDecimal;
+import javax.persistence.EntityManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class CartServiceUnitTests {
+    private CartRepository cartRepository;
+    private EntityManager entityManager;
+    private PlatformTransactionManager transactionManager;
+    private User testUser;
+    private Item testItem;
+
+    @Before
+    public void setup() {
+        cartRepository = mock(CartRepository.class);
+        entityManager = mock(EntityManager.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        testItem = getTestItem();
+        testUser = getTestUser();
+    }
+
+    @Test
+    public void givenWriteThrough_whenModify_thenSaveEveryMutation() {
+        // given
+        CartService cartService = new CartService(cartRepository, entityManager, transactionManager, false, 60_000);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            cartService.modify(testUser, cart -> cart.addItem(testItem, 1));
+        }
+
+        // then
+        verify(cartRepository, times(10)).save(any(Cart.class));
+    }
+
+    @Test
+    public void givenWriteBehind_whenModifyRepeatedly_thenCoalesceIntoSingleFlush() {
+        // given
+        CartService cartService = new CartService(cartRepository, entityManager, transactionManager, true, 60_000);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            cartService.modify(testUser, cart -> cart.addItem(testItem, 1));
+        }
+
+        // then
+        verify(cartRepository, never()).save(any(Cart.class));
+        Assertions.assertEquals(10, cartService.getCart(testUser).getLine(testItem.getId()).getQuantity());
+
+        cartService.flush(testUser.getUsername());
+        cartService.flush(testUser.getUsername());
+        verify(cartRepository, times(1)).save(any(Cart.class));
+    }
+
+    @Test
+    public void givenWriteBehind_whenShutdown_thenFlushPendingCarts() {
+        // given
+        CartService cartService = new CartService(cartRepository, entityManager, transactionManager, true, 60_000);
+        cartService.modify(testUser, cart -> cart.addItem(testItem, 3));
+
+        // when
+        cartService.flushAll();
+
+        // then
+        verify(cartRepository, times(1)).save(any(Cart.class));
+    }
+
+    @Test
+    public void givenWriteBehind_whenGetCart_thenReturnCopyUnchangedByLaterMutations() {
+        // given
+        CartService cartService = new CartService(cartRepository, entityManager, transactionManager, true, 60_000);
+        cartService.modify(testUser, cart -> cart.addItem(testItem, 2));
+        Cart snapshot = cartService.getCart(testUser);
+
+        // when
+        cartService.modify(testUser, cart -> cart.addItem(testItem, 1));
+
+        // then
+        Assertions.assertEquals(2, snapshot.getLine(testItem.getId()).getQuantity());
+        Assertions.assertEquals(3, cartService.getCart(testUser).getLine(testItem.getId()).getQuantity());
+    }
+
+    @Test
+    public void givenWriteBehindAndManagedCart_whenModify_thenDetachBeforeMutating() {
+        // given
+        CartService cartService = new CartService(cartRepository, entityManager, transactionManager, true, 60_000);
+        given(entityManager.contains(testUser.getCart())).willReturn(true);
+
+        // when
+        cartService.modify(testUser, cart -> cart.addItem(testItem, 1));
+
+        // then
+        verify(entityManager, times(1)).detach(testUser.getCart());
+        verify(cartRepository, never()).save(any(Cart.class));
+    }
+
+    private Item getTestItem() {
+        Item testItem = new Item();
+        testItem.setId(123L);
+        testItem.setName("Test Item");
+        testItem.setDescription("Lengthy description of Test Item");
+        testItem.setPrice(BigDecimal.valueOf(5.99));
+        return testItem;
+    }
+
+    private User getTestUser() {
+        User testUser = new User();
+        testUser.setId(345L);
+        testUser.setUsername("testuser");
+        Cart testCart = new Cart();
+        testCart.setId(678L);
+        testCart.setUser(testUser);
+        testUser.setCart(testCart);
+        return testUser;
+    }
+}
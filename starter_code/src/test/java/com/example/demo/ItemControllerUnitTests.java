@@ -1,8 +1,14 @@
 package com.example.demo;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.example.demo.model.persistence.Cart;
@@ -12,12 +18,21 @@ import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.ImportJob;
+import com.example.demo.model.responses.ImportReport;
+import com.example.demo.model.responses.ItemBatch;
+import com.example.demo.model.responses.ItemPage;
 import com.example.demo.security.JWTAuthenticationFilter;
+import com.example.demo.security.SecurityConstants;
+import com.example.demo.services.ItemCatalog;
+import com.example.demo.services.ItemSearchIndex;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import org.junit.Before;
@@ -29,6 +44,8 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -44,6 +61,12 @@ public class ItemControllerUnitTests {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private ItemCatalog itemCatalog;
+
+    @Autowired
+    private ItemSearchIndex itemSearchIndex;
+
     @MockBean
     private ItemRepository itemRepository;
 
@@ -58,6 +81,7 @@ public class ItemControllerUnitTests {
         testItem1 = getTestItem1();
         testItem2 = getTestItem2();
         testItemList = getTestItemList();
+        itemCatalog.catalogChanged();
     }
 
     @Test
@@ -131,6 +155,293 @@ public class ItemControllerUnitTests {
         Assertions.assertEquals(testItem1.getDescription(), returnedItemList.get(0).getDescription());
     }
 
+    @Test
+    public void givenCachedCatalog_whenGetItemsTwice_thenRepositoryQueriedOnce() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findAll()).willReturn(testItemList);
+
+        // when
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(get("/api/item")
+                    .header("Authorization", "Bearer " + jwtToken)
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+        }
+
+        // then
+        verify(itemRepository, times(1)).findAll();
+    }
+
+    @Test
+    public void givenUnchangedCatalog_whenGetItemsWithEtag_thenReturnNotModified() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findAll()).willReturn(testItemList);
+
+        MvcResult mvcResult = mvc.perform(get("/api/item")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        String etag = mvcResult.getResponse().getHeader("ETag");
+
+        // when / then
+        mvc.perform(get("/api/item")
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        itemCatalog.catalogChanged();
+        mvc.perform(get("/api/item")
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void givenCatalogChanged_whenGetItemById_thenReloadFromRepository() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findById(testItem1.getId())).willReturn(Optional.of(testItem1));
+
+        // when
+        mvc.perform(get("/api/item/"+testItem1.getId())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+        itemCatalog.catalogChanged();
+        mvc.perform(get("/api/item/"+testItem1.getId())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        // then
+        verify(itemRepository, times(2)).findById(testItem1.getId());
+    }
+
+    @Test
+    public void givenCachedItem_whenCallerMutatesIt_thenCachedItemIsUnchanged() {
+        // given
+        given(itemRepository.findById(testItem1.getId())).willReturn(Optional.of(testItem1));
+        Item first = itemCatalog.findById(testItem1.getId()).get();
+
+        // when
+        first.setName("Changed by one request");
+        testItem1.setName("Changed in the persistence context");
+        Item second = itemCatalog.findById(testItem1.getId()).get();
+
+        // then
+        verify(itemRepository, times(1)).findById(testItem1.getId());
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals("Test Item 1", second.getName());
+    }
+
+    @Test
+    public void givenMoreItemsThanPageSize_whenGetItemPage_thenReturnPageWithCursor() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).willReturn(testItemList);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/item/page?after=0&size=1")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        ItemPage returnedPage = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ItemPage.class);
+
+        // then
+        Assertions.assertEquals(1, returnedPage.getItems().size());
+        Assertions.assertEquals(testItem1.getName(), returnedPage.getItems().get(0).getName());
+        Assertions.assertEquals(testItem1.getId(), returnedPage.getNextCursor());
+    }
+
+    @Test
+    public void givenLastPage_whenGetItemPage_thenReturnNoCursor() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).willReturn(testItemList);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/item/page?after=0&size=10")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        ItemPage returnedPage = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ItemPage.class);
+
+        // then
+        Assertions.assertEquals(testItemList.size(), returnedPage.getItems().size());
+        Assertions.assertNull(returnedPage.getNextCursor());
+    }
+
+    @Test
+    public void whenStreamItems_thenReturnSeededCatalog() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/item/stream")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+        List<Item> returnedItemList = mvcResultToItemList(mvcResult);
+
+        // then (data.sql is re-run by every test context sharing the in-memory database)
+        Assertions.assertTrue(returnedItemList.size() >= 2);
+        Assertions.assertEquals("Round Widget", returnedItemList.get(0).getName());
+        Assertions.assertEquals("Square Widget", returnedItemList.get(1).getName());
+    }
+
+    @Test
+    public void givenIndexedItems_whenSearchByPrefix_thenReturnRankedMatches() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        Item nameMatch = getTestItem2();
+        nameMatch.setId(125L);
+        nameMatch.setName("Lengthy Gadget");
+        itemSearchIndex.index(testItem1);
+        itemSearchIndex.index(testItem2);
+        itemSearchIndex.index(nameMatch);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/item/search?q=length desc")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        List<Item> returnedItemList = mvcResultToItemList(mvcResult);
+
+        // then: a name hit outranks description hits, ties are ordered by id
+        Assertions.assertEquals(3, returnedItemList.size());
+        Assertions.assertEquals(nameMatch.getId(), returnedItemList.get(0).getId());
+        Assertions.assertEquals(testItem1.getId(), returnedItemList.get(1).getId());
+        Assertions.assertEquals(testItem2.getId(), returnedItemList.get(2).getId());
+    }
+
+    @Test
+    public void givenIndexedItems_whenSearchUnknownTerm_thenReturnEmptyList() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        itemSearchIndex.index(testItem1);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/item/search?q=test nosuchterm")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        // then
+        Assertions.assertEquals(0, mvcResultToItemList(mvcResult).size());
+    }
+
+    @Test
+    public void givenCsvUpload_whenImportItems_thenReportImportedAndRejectedRows() throws Exception {
+        // given
+        String jwtToken = getAdminToken();
+        String csv = "name,price,description\n"
+                + "Imported Widget,4.50,\"A widget, imported\"\n"
+                + "Imported Gadget,0.99,A gadget\n"
+                + "Broken Row,not-a-price,Broken\n";
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/item/import")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(csv)
+                .contentType("Text/CSV; charset=UTF-8"))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        ImportReport report = awaitImportReport(mvcResult, jwtToken);
+
+        // then
+        Assertions.assertEquals(2, report.getImported());
+        Assertions.assertEquals(1, report.getRejected());
+        Assertions.assertEquals(1, report.getErrors().size());
+        Assertions.assertEquals("Imported Gadget", itemCatalog.search("imported gadget", 1).get(0).getName());
+    }
+
+    @Test
+    public void givenNonAdmin_whenImportItems_thenReturnForbidden() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        // when / then
+        mvc.perform(post("/api/item/import")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content("name,price,description\nImported Widget,4.50,A widget\n")
+                .contentType("text/csv"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void givenNdjsonUpload_whenImportItems_thenReportImportedRows() throws Exception {
+        // given
+        String jwtToken = getAdminToken();
+        String ndjson = "{\"name\":\"Json Widget\",\"price\":1.25,\"description\":\"From NDJSON\"}\n"
+                + "{\"name\":\"\",\"price\":1.25,\"description\":\"Missing name\"}\n";
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/item/import")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(ndjson)
+                .contentType("application/x-ndjson"))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        ImportReport report = awaitImportReport(mvcResult, jwtToken);
+
+        // then
+        Assertions.assertEquals(1, report.getImported());
+        Assertions.assertEquals(1, report.getRejected());
+    }
+
+    @Test
+    public void whenGetItemsByIds_thenReturnItemsInRequestOrderAndMissingIds() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findAllById(any())).willReturn(testItemList);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/item/batch?ids=124,999,123")
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        ItemBatch batch = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ItemBatch.class);
+
+        // then
+        Assertions.assertEquals(2, batch.getItems().size());
+        Assertions.assertEquals(testItem2.getId(), batch.getItems().get(0).getId());
+        Assertions.assertEquals(testItem1.getId(), batch.getItems().get(1).getId());
+        Assertions.assertEquals(Arrays.asList(999L), batch.getMissingIds());
+        verify(itemRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    public void givenCachedItem_whenGetItemsByIds_thenQueryOnlyMisses() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(itemRepository.findById(testItem1.getId())).willReturn(Optional.of(testItem1));
+        given(itemRepository.findAllById(any())).willReturn(Arrays.asList(testItem2));
+        mvc.perform(get("/api/item/"+testItem1.getId())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        // when
+        mvc.perform(get("/api/item/batch?ids=123,124")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        // then
+        verify(itemRepository).findAllById(eq(new LinkedHashSet<>(Arrays.asList(testItem2.getId()))));
+    }
+
     @Test
     public void givenNoJwt_whenListAllItems_thenReturnUnauthorized() throws Exception {
         // when / then
@@ -196,4 +507,26 @@ public class ItemControllerUnitTests {
        String contentAsString = result.getResponse().getContentAsString();
        return objectMapper.convertValue(objectMapper.readValue(contentAsString, List.class), new TypeReference<List<Item>>() { });
    }
+
+    private ImportReport awaitImportReport(MvcResult submitted, String jwtToken) throws Exception {
+        String location = submitted.getResponse().getHeader(HttpHeaders.LOCATION);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            MvcResult mvcResult = mvc.perform(get(location)
+                    .header("Authorization", "Bearer " + jwtToken))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            ImportJob job = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ImportJob.class);
+            if (job.getStatus() == ImportJob.Status.COMPLETED) {
+                return job.getReport();
+            }
+            Assertions.assertNotEquals(ImportJob.Status.FAILED, job.getStatus());
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "import job did not complete");
+            Thread.sleep(50);
+        }
+    }
+
+    private String getAdminToken() {
+        return JWTAuthenticationFilter.createToken("admin", Collections.singletonList(SecurityConstants.ADMIN_AUTHORITY));
+    }
 }
@@ -0,0 +1,69 @@
+package com.example.demo;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.JdbcItemRepository;
+import com.example.demo.services.ItemSearchIndex;
+import java.math.BigDecimal;
+import java.util.function.Consumer;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ItemSearchIndexUnitTests {
+
+    @Test
+    public void givenItemIndexedDuringRebuild_whenRebuildCompletes_thenKeepItem() {
+        // given
+        JdbcItemRepository jdbcItemRepository = mock(JdbcItemRepository.class);
+        ItemSearchIndex itemSearchIndex = new ItemSearchIndex(jdbcItemRepository);
+        doAnswer(invocation -> {
+            Consumer<Item> consumer = invocation.getArgument(0);
+            consumer.accept(getTestItem(1L, "Round Widget"));
+            // written and indexed by another request while the table is being read
+            itemSearchIndex.index(getTestItem(2L, "Square Widget"));
+            itemSearchIndex.index(getTestItem(1L, "Oval Widget"));
+            return null;
+        }).when(jdbcItemRepository).streamAll(any());
+
+        // when
+        itemSearchIndex.rebuild();
+
+        // then
+        Assertions.assertEquals(2, itemSearchIndex.size());
+        Assertions.assertEquals(1, itemSearchIndex.search("square", 10).size());
+        Assertions.assertEquals(1, itemSearchIndex.search("oval", 10).size());
+        Assertions.assertTrue(itemSearchIndex.search("round", 10).isEmpty());
+    }
+
+    @Test
+    public void givenItemRemovedDuringRebuild_whenRebuildCompletes_thenDropItem() {
+        // given
+        JdbcItemRepository jdbcItemRepository = mock(JdbcItemRepository.class);
+        ItemSearchIndex itemSearchIndex = new ItemSearchIndex(jdbcItemRepository);
+        doAnswer(invocation -> {
+            Consumer<Item> consumer = invocation.getArgument(0);
+            consumer.accept(getTestItem(1L, "Round Widget"));
+            itemSearchIndex.remove(1L);
+            return null;
+        }).when(jdbcItemRepository).streamAll(any());
+
+        // when
+        itemSearchIndex.rebuild();
+
+        // then
+        Assertions.assertEquals(0, itemSearchIndex.size());
+        Assertions.assertTrue(itemSearchIndex.search("widget", 10).isEmpty());
+    }
+
+    private Item getTestItem(long id, String name) {
+        Item testItem = new Item();
+        testItem.setId(id);
+        testItem.setName(name);
+        testItem.setDescription("Lengthy description of " + name);
+        testItem.setPrice(BigDecimal.valueOf(5.99));
+        return testItem;
+    }
+}
@@ -1,26 +1,41 @@
 package com.example.demo;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderLine;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderStats;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.OrderRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderLineView;
+import com.example.demo.model.responses.OrderPage;
+import com.example.demo.model.responses.OrderSubmission;
+import com.example.demo.model.responses.OrderView;
 import com.example.demo.security.JWTAuthenticationFilter;
+import com.example.demo.services.UserCache;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
@@ -30,11 +45,14 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 
@@ -42,12 +60,21 @@ import org.springframework.web.bind.annotation.PostMapping;
 @SpringBootTest(webEnvironment=WebEnvironment.RANDOM_PORT)
 @AutoConfigureMockMvc
 public class OrderControllerUnitTests {
+    /**
+     * No persisted user has this id, so no other test writes totals for it; the stats tests run
+     * in a transaction that is rolled back, so they do not see each other's totals either.
+     */
+    private static final long STATS_USER_ID = -1L;
+
     @Autowired
     private MockMvc mvc;
 
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private UserCache userCache;
+
     @MockBean
     private UserRepository userRepository;
 
@@ -57,23 +84,25 @@ public class OrderControllerUnitTests {
     private User testUser;
     private Item testItem;
     private UserOrder testUserOrder;
-    private List<UserOrder> testUserOrderList;
 
     @Before
     public void setup() {
+        userCache.clear();
         testUser = getTestUser();
         testItem = getTestItem();
         testUserOrder = getTestUserOrder(testUser, 4);
-        testUserOrderList = getTestUserOrderList(testUser);
     }
 
     @Test
     public void whenGetHistory_thenReturnUserOrderList() throws Exception {
         // given
         String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        List<OrderView> testOrderViews = Arrays.asList(getTestOrderView(677L, 3), getTestOrderView(678L, 4));
 
         given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
-        given(orderRepository.findByUser(any(User.class))).willReturn(testUserOrderList);
+        given(orderRepository.findViewsByUser(any(User.class))).willReturn(testOrderViews);
+        given(orderRepository.findLinesByUser(any(User.class))).willReturn(Arrays.asList(
+                getTestOrderLine(677L, 3), getTestOrderLine(678L, 4)));
 
         // when
         MvcResult mvcResult = mvc.perform(get("/api/order/history/"+testUser.getUsername())
@@ -81,14 +110,68 @@ public class OrderControllerUnitTests {
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andReturn();
-        List<UserOrder> returnedUserOrderList = mvcResultToUserOrderList(mvcResult);
+        List<OrderView> returnedOrders = mvcResultToOrderViewList(mvcResult);
 
         // then
-        Assertions.assertEquals(testUserOrderList.size(), returnedUserOrderList.size());
-        Assertions.assertEquals(testUserOrderList.get(0).getTotal(), returnedUserOrderList.get(0).getTotal());
-        Assertions.assertEquals(testUserOrderList.get(0).getItems().size(), returnedUserOrderList.get(0).getItems().size());
-        Assertions.assertEquals(testUserOrderList.get(1).getTotal(), returnedUserOrderList.get(1).getTotal());
-        Assertions.assertEquals(testUserOrderList.get(1).getItems().size(), returnedUserOrderList.get(1).getItems().size());
+        Assertions.assertEquals(testOrderViews.size(), returnedOrders.size());
+        Assertions.assertEquals(testOrderViews.get(0).getTotal(), returnedOrders.get(0).getTotal());
+        Assertions.assertEquals(3, returnedOrders.get(0).getLines().get(0).getQuantity());
+        Assertions.assertEquals(testOrderViews.get(1).getTotal(), returnedOrders.get(1).getTotal());
+        Assertions.assertEquals(4, returnedOrders.get(1).getLines().get(0).getQuantity());
+        Assertions.assertFalse(mvcResult.getResponse().getContentAsString().contains("\"user\""));
+    }
+
+    @Test
+    public void givenUnchangedHistory_whenGetHistoryWithEtag_thenReturnNotModified() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(orderRepository.countByUser(any(User.class))).willReturn(2L);
+        given(orderRepository.findLastOrderIdByUser(any(User.class))).willReturn(678L);
+
+        MvcResult mvcResult = mvc.perform(get("/api/order/history/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        String etag = mvcResult.getResponse().getHeader("ETag");
+
+        // when
+        mvc.perform(get("/api/order/history/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // then
+        Assertions.assertNotNull(etag);
+        verify(orderRepository, times(1)).findViewsByUser(any(User.class));
+    }
+
+    @Test
+    public void givenSubmittedOrder_whenGetHistoryWithOldEtag_thenReturnHistory() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(orderRepository.countByUser(any(User.class))).willReturn(1L, 2L);
+        given(orderRepository.findLastOrderIdByUser(any(User.class))).willReturn(677L, 678L);
+
+        MvcResult mvcResult = mvc.perform(get("/api/order/history/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        String etag = mvcResult.getResponse().getHeader("ETag");
+        // the cart only exists on the mocked user, so load it again rather than from the cache
+        userCache.clear();
+        mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        // when / then
+        mvc.perform(get("/api/order/history/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("If-None-Match", etag))
+                .andExpect(status().isOk());
     }
 
     @Test
@@ -109,11 +192,64 @@ public class OrderControllerUnitTests {
 
         // then
         Assertions.assertEquals(testCart.getTotal(), returnedUserOrder.getTotal());
-        Assertions.assertEquals(testCart.getItems().size(), returnedUserOrder.getItems().size());
+        Assertions.assertEquals(testCart.getLine(testItem.getId()).getQuantity(), returnedUserOrder.getLines().get(0).getQuantity());
+        Assertions.assertTrue(returnedUserOrder.getItems().isEmpty());
         Assertions.assertEquals(testCart.getUser().getUsername(), returnedUserOrder.getUser().getUsername());
         Assertions.assertEquals(testCart.getUser().getId(), returnedUserOrder.getUser().getId());
     }
 
+    @Test
+    public void givenIdempotencyKey_whenSubmitOrderTwice_thenWriteOnceAndReturnSameOrder() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(orderRepository.save(any(UserOrder.class))).willAnswer(invocation -> {
+            UserOrder order = invocation.getArgument(0);
+            order.setId(679L);
+            return order;
+        });
+
+        // when
+        MvcResult first = mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("Idempotency-Key", idempotencyKey))
+                .andExpect(status().isOk())
+                .andReturn();
+        MvcResult retry = mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("Idempotency-Key", idempotencyKey))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        // then
+        Assertions.assertEquals(mvcResultToUserOrder(first).getId(), mvcResultToUserOrder(retry).getId());
+        verify(orderRepository, times(1)).save(any(UserOrder.class));
+        verify(orderRepository, times(1)).findByUserAndIdempotencyKey(any(User.class), eq(idempotencyKey));
+    }
+
+    @Test
+    public void givenIdempotencyKeyOfStoredOrder_whenSubmitOrder_thenReturnStoredOrder() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(orderRepository.findByUserAndIdempotencyKey(any(User.class), eq(idempotencyKey))).willReturn(testUserOrder);
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken)
+                .header("Idempotency-Key", idempotencyKey))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        // then
+        Assertions.assertEquals(testUserOrder.getId(), mvcResultToUserOrder(mvcResult).getId());
+        verify(orderRepository, times(0)).save(any(UserOrder.class));
+    }
+
     @Test
     public void givenUnknownUser_whenSubmitOrder_thenReturnNotFound() throws Exception {
         // given
@@ -128,6 +264,184 @@ public class OrderControllerUnitTests {
             .andExpect(status().isNotFound());
     }
 
+    @Test
+    @Transactional
+    public void givenSubmittedOrders_whenGetStats_thenReturnRunningTotals() throws Exception {
+        // given
+        testUser.setId(STATS_USER_ID);
+        testUser.getCart().setId(null);
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        for (int i = 0; i < 2; i++) {
+            // the cart only exists on the mocked user, so load it again rather than from the cache
+            userCache.clear();
+            mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                    .header("Authorization", "Bearer " + jwtToken))
+                    .andExpect(status().isOk());
+        }
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/order/stats/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        UserOrderStats stats = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), UserOrderStats.class);
+
+        // then
+        Assertions.assertEquals(2, stats.getOrderCount());
+        Assertions.assertEquals(0, testUser.getCart().getTotal().multiply(BigDecimal.valueOf(2)).compareTo(stats.getTotal()));
+        Assertions.assertNotNull(stats.getLastOrderAt());
+        verify(orderRepository, times(0)).findByUser(any(User.class));
+    }
+
+    @Test
+    @Transactional
+    public void givenNoOrders_whenGetStats_thenReturnZeros() throws Exception {
+        // given
+        testUser.setId(STATS_USER_ID);
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/order/stats/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        UserOrderStats stats = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), UserOrderStats.class);
+
+        // then
+        Assertions.assertEquals(0, stats.getOrderCount());
+        Assertions.assertEquals(0, BigDecimal.ZERO.compareTo(stats.getTotal()));
+        Assertions.assertNull(stats.getLastOrderAt());
+    }
+
+    @Test
+    public void givenMoreOrdersThanPageSize_whenGetHistoryPage_thenReturnPageAndCursor() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        List<OrderView> newestFirst = Arrays.asList(getTestOrderView(680L, 3), getTestOrderView(679L, 4), getTestOrderView(678L, 1));
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(orderRepository.findViewPageByUser(any(User.class), eq(Long.MAX_VALUE), any(Pageable.class))).willReturn(newestFirst);
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/order/history/"+testUser.getUsername()+"/page?size=2")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        OrderPage page = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), OrderPage.class);
+
+        // then
+        Assertions.assertEquals(2, page.getOrders().size());
+        Assertions.assertEquals(680L, page.getOrders().get(0).getId());
+        Assertions.assertEquals(679L, page.getNextCursor());
+        verify(orderRepository).findLinesByOrderIds(Arrays.asList(680L, 679L));
+    }
+
+    @Test
+    public void givenDateRange_whenGetHistoryPage_thenQueryRange() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        Instant from = Instant.parse("2021-01-01T00:00:00Z");
+        Instant to = Instant.parse("2021-02-01T00:00:00Z");
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(orderRepository.findViewPageByUserAndCreatedAt(any(User.class), eq(679L), eq(from), eq(to), any(Pageable.class)))
+                .willReturn(Collections.singletonList(getTestOrderView(678L, 4)));
+
+        // when
+        MvcResult mvcResult = mvc.perform(get("/api/order/history/"+testUser.getUsername()+"/page")
+                .param("before", "679")
+                .param("from", from.toString())
+                .param("to", to.toString())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        OrderPage page = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), OrderPage.class);
+
+        // then
+        Assertions.assertEquals(1, page.getOrders().size());
+        Assertions.assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void givenInvertedDateRange_whenGetHistoryPage_thenReturnBadRequest() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        // when / then
+        mvc.perform(get("/api/order/history/"+testUser.getUsername()+"/page")
+                .param("from", "2021-02-01T00:00:00Z")
+                .param("to", "2021-01-01T00:00:00Z")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void givenAsyncSubmit_whenPollSubmission_thenOrderIsWritten() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                .param("async", "true")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists(HttpHeaders.LOCATION))
+                .andReturn();
+        OrderSubmission submission = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), OrderSubmission.class);
+
+        // then
+        Assertions.assertEquals(OrderSubmission.Status.QUEUED, submission.getStatus());
+        String location = mvcResult.getResponse().getHeader(HttpHeaders.LOCATION);
+        OrderSubmission polled = submission;
+        for (int attempt = 0; attempt < 50 && polled.getStatus() == OrderSubmission.Status.QUEUED; attempt++) {
+            Thread.sleep(100);
+            mvcResult = mvc.perform(get(location)
+                    .header("Authorization", "Bearer " + jwtToken))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            polled = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), OrderSubmission.class);
+        }
+        Assertions.assertEquals(OrderSubmission.Status.COMPLETED, polled.getStatus());
+        verify(orderRepository).save(argThat((UserOrder order) -> order.getItems().isEmpty()
+                && order.getLines().stream().mapToInt(OrderLine::getQuantity).sum() == 4));
+    }
+
+    @Test
+    public void givenOtherUsersSubmission_whenGetSubmission_thenReturnNotFound() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String otherJwtToken = JWTAuthenticationFilter.createToken("otheruser");
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        MvcResult mvcResult = mvc.perform(post("/api/order/submit/"+testUser.getUsername())
+                .param("async", "true")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isAccepted())
+                .andReturn();
+
+        // when / then
+        mvc.perform(get(mvcResult.getResponse().getHeader(HttpHeaders.LOCATION))
+                .header("Authorization", "Bearer " + otherJwtToken))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void givenUnknownSubmission_whenGetSubmission_thenReturnNotFound() throws Exception {
+        // given
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        // when / then
+        mvc.perform(get("/api/order/submission/unknown")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void givenUnknownUser_whenGetHistory_thenReturnNotFound() throws Exception {
         // given
@@ -193,29 +507,27 @@ public class OrderControllerUnitTests {
         Item testItem = getTestItem();
         testCart.setId(678L);
         testCart.setUser(user);
-        List<Item> cartItems = new ArrayList<>();
-        for (int i = 0; i < quantityOfTestItem; i++)
-            cartItems.add(testItem);
-        testCart.setItems(cartItems);
-        testCart.setTotal(testItem.getPrice().multiply(new BigDecimal(quantityOfTestItem)));
+        testCart.addItem(testItem, quantityOfTestItem);
         return testCart;
     }
 
-    private List<UserOrder> getTestUserOrderList(User user) {
-        List<UserOrder> testUserOrderList = new ArrayList<>();
-        testUserOrderList.add(getTestUserOrder(user, 3));
-        testUserOrderList.add(getTestUserOrder(user, 4));
-        return testUserOrderList;
-    }
-
     private UserOrder mvcResultToUserOrder(MvcResult result) throws Exception {
         String contentAsString = result.getResponse().getContentAsString();
         return objectMapper.readValue(contentAsString, UserOrder.class);
     }
 
 
-   private List<UserOrder> mvcResultToUserOrderList(MvcResult result) throws Exception {
+    private OrderView getTestOrderView(long id, int quantityOfTestItem) {
+        return new OrderView(id, 599L * quantityOfTestItem, Instant.now());
+    }
+
+    private OrderLineView getTestOrderLine(long orderId, int quantityOfTestItem) {
+        Item testItem = getTestItem();
+        return new OrderLineView(orderId, testItem.getId(), testItem.getName(), 599L, (long) quantityOfTestItem);
+    }
+
+   private List<OrderView> mvcResultToOrderViewList(MvcResult result) throws Exception {
        String contentAsString = result.getResponse().getContentAsString();
-       return objectMapper.convertValue(objectMapper.readValue(contentAsString, List.class), new TypeReference<List<UserOrder>>() { });
+       return objectMapper.convertValue(objectMapper.readValue(contentAsString, List.class), new TypeReference<List<OrderView>>() { });
    }
 }
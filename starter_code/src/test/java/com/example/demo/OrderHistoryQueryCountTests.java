@@ -0,0 +1,175 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderLine;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderPage;
+import com.example.demo.model.responses.OrderView;
+import com.example.demo.services.OrderHistoryReader;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Counts the SQL statements issued per order history read against the real database.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class OrderHistoryQueryCountTests {
+
+    @Autowired
+    private OrderHistoryReader orderHistoryReader;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void givenGrowingHistory_whenFindAll_thenStatementCountStaysConstant() {
+        // given
+        User fewOrders = createUserWithOrders(2);
+        User manyOrders = createUserWithOrders(20);
+
+        // when
+        long statementsForFew = countStatements(() -> orderHistoryReader.findAll(fewOrders));
+        long statementsForMany = countStatements(() -> orderHistoryReader.findAll(manyOrders));
+
+        // then
+        Assertions.assertEquals(2, statementsForFew);
+        Assertions.assertEquals(statementsForFew, statementsForMany);
+        List<OrderView> orders = orderHistoryReader.findAll(manyOrders);
+        Assertions.assertEquals(20, orders.size());
+        Assertions.assertEquals(2, orders.get(0).getLines().size());
+        Assertions.assertEquals(3, orders.get(0).getLines().get(1).getQuantity());
+    }
+
+    @Test
+    public void givenGrowingHistory_whenFindPage_thenStatementCountStaysConstant() {
+        // given
+        User fewOrders = createUserWithOrders(3);
+        User manyOrders = createUserWithOrders(30);
+
+        // when
+        long statementsForFew = countStatements(() -> orderHistoryReader.findPage(fewOrders, Long.MAX_VALUE, 10, null, null));
+        long statementsForMany = countStatements(() -> orderHistoryReader.findPage(manyOrders, Long.MAX_VALUE, 10, null, null));
+
+        // then
+        Assertions.assertEquals(statementsForFew, statementsForMany);
+        OrderPage page = orderHistoryReader.findPage(manyOrders, Long.MAX_VALUE, 10, null, null);
+        Assertions.assertEquals(10, page.getOrders().size());
+        Assertions.assertNotNull(page.getNextCursor());
+        Assertions.assertEquals(2, page.getOrders().get(0).getLines().size());
+    }
+
+    @Test
+    public void givenItemPriceChanged_whenFindAll_thenShowPriceAtOrderTime() {
+        // given
+        User user = createUserWithOrders(1);
+        Long widgetId = orderHistoryReader.findAll(user).get(0).getLines().get(0).getItemId();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                itemRepository.findById(widgetId).get().setPrice(new BigDecimal("9.99")));
+
+        // when
+        List<OrderView> orders = orderHistoryReader.findAll(user);
+
+        // then
+        Assertions.assertEquals(0, orders.get(0).getLines().get(0).getUnitPrice().compareTo(new BigDecimal("1.50")));
+    }
+
+    @Test
+    public void givenOrdersWithoutLineSnapshots_whenFindAll_thenRebuildLinesFromItems() {
+        // given
+        User user = createUserWithOrders(3, false);
+
+        // when
+        long statements = countStatements(() -> orderHistoryReader.findAll(user));
+        List<OrderView> orders = orderHistoryReader.findAll(user);
+
+        // then
+        Assertions.assertEquals(3, statements);
+        Assertions.assertEquals(2, orders.get(0).getLines().size());
+        Assertions.assertEquals(3, orders.get(0).getLines().get(1).getQuantity());
+    }
+
+    private long countStatements(Runnable read) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        read.run();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private User createUserWithOrders(int orders) {
+        return createUserWithOrders(orders, true);
+    }
+
+    private User createUserWithOrders(int orders, boolean withLineSnapshots) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            Item widget = itemRepository.save(getTestItem("Query Count Widget", "1.50"));
+            Item gadget = itemRepository.save(getTestItem("Query Count Gadget", "2.00"));
+            User user = new User();
+            user.setUsername("history-" + UUID.randomUUID());
+            user.setPassword("not-a-real-hash");
+            user.setCart(new Cart());
+            user = userRepository.save(user);
+            for (int i = 0; i < orders; i++) {
+                UserOrder order = new UserOrder();
+                order.setUser(user);
+                order.setItems(new ArrayList<>(Arrays.asList(widget, gadget, gadget, gadget)));
+                order.setTotal(new BigDecimal("7.50"));
+                order.setCreatedAt(Instant.now());
+                if (withLineSnapshots) {
+                    order.setLines(new ArrayList<>(Arrays.asList(getTestLine(widget, 1), getTestLine(gadget, 3))));
+                }
+                orderRepository.save(order);
+            }
+            return user;
+        });
+    }
+
+    private OrderLine getTestLine(Item item, int quantity) {
+        OrderLine line = new OrderLine();
+        line.setItemId(item.getId());
+        line.setName(item.getName());
+        line.setUnitPrice(item.getPrice());
+        line.setQuantity(quantity);
+        return line;
+    }
+
+    private Item getTestItem(String name, String price) {
+        Item item = new Item();
+        item.setName(name);
+        item.setDescription("Item for counting history queries");
+        item.setPrice(new BigDecimal(price));
+        return item;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.demo;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.services.OrderHistoryVersions;
+import com.example.demo.services.StripedLocks;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class OrderHistoryVersionsUnitTests {
+    // mirrors the stripe count OrderHistoryVersions tracks writes with
+    private static final int LOCK_STRIPES = 1024;
+
+    @Test
+    public void givenOrderWrittenWhileComputingEtag_whenGetEtag_thenDoNotCacheStaleEtag() {
+        // given
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        OrderHistoryVersions orderHistoryVersions = new OrderHistoryVersions(orderRepository, new CacheRegistry(), 100, 3600);
+        User testUser = getTestUser();
+        given(orderRepository.findLastOrderIdByUser(any(User.class))).willReturn(677L);
+        given(orderRepository.countByUser(any(User.class))).willAnswer(invocation -> {
+            orderHistoryVersions.historyChanged(testUser.getUsername());
+            return 1L;
+        });
+
+        // when
+        String etag = orderHistoryVersions.getEtag(testUser);
+
+        // then
+        Assertions.assertEquals("\"1-677\"", etag);
+        Assertions.assertNull(orderHistoryVersions.getCachedEtag(testUser.getUsername()));
+    }
+
+    @Test
+    public void givenOrderByOtherUserWhileComputingEtag_whenGetEtag_thenCacheEtag() {
+        // given
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        OrderHistoryVersions orderHistoryVersions = new OrderHistoryVersions(orderRepository, new CacheRegistry(), 100, 3600);
+        User testUser = getTestUser();
+        String otherUsername = usernameOnDifferentStripe(testUser.getUsername());
+        given(orderRepository.findLastOrderIdByUser(any(User.class))).willReturn(677L);
+        given(orderRepository.countByUser(any(User.class))).willAnswer(invocation -> {
+            orderHistoryVersions.historyChanged(otherUsername);
+            return 1L;
+        });
+
+        // when
+        String etag = orderHistoryVersions.getEtag(testUser);
+
+        // then
+        Assertions.assertEquals(etag, orderHistoryVersions.getCachedEtag(testUser.getUsername()));
+    }
+
+    @Test
+    public void givenConcurrentOrders_whenWritesStop_thenCachedEtagIsCurrent() throws Exception {
+        // given
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        OrderHistoryVersions orderHistoryVersions = new OrderHistoryVersions(orderRepository, new CacheRegistry(), 100, 3600);
+        User testUser = getTestUser();
+        AtomicLong orders = new AtomicLong();
+        given(orderRepository.findLastOrderIdByUser(any(User.class))).willAnswer(invocation -> orders.get());
+        given(orderRepository.countByUser(any(User.class))).willAnswer(invocation -> orders.get());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(() -> {
+                while (writing.get()) {
+                    orderHistoryVersions.getEtag(testUser);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        // when
+        for (int i = 0; i < 5000; i++) {
+            orders.incrementAndGet();
+            orderHistoryVersions.historyChanged(testUser.getUsername());
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        // then
+        Assertions.assertEquals("\"5000-5000\"", orderHistoryVersions.getEtag(testUser));
+    }
+
+    private String usernameOnDifferentStripe(String username) {
+        StripedLocks locks = new StripedLocks(LOCK_STRIPES);
+        String candidate;
+        do {
+            candidate = "otheruser-" + UUID.randomUUID();
+        } while (locks.indexOf(candidate) == locks.indexOf(username));
+        return candidate;
+    }
+
+    private User getTestUser() {
+        User testUser = new User();
+        testUser.setId(345L);
+        testUser.setUsername("testuser");
+        return testUser;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderStats;
+import com.example.demo.model.persistence.repositories.JdbcOrderRepository;
+import com.example.demo.model.persistence.repositories.UserOrderStatsRepository;
+import com.example.demo.services.OrderStatistics;
+import java.time.Instant;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class OrderStatisticsUnitTests {
+    private UserOrderStatsRepository userOrderStatsRepository;
+    private JdbcOrderRepository jdbcOrderRepository;
+    private OrderStatistics orderStatistics;
+    private User testUser;
+
+    @Before
+    public void setup() {
+        userOrderStatsRepository = mock(UserOrderStatsRepository.class);
+        jdbcOrderRepository = mock(JdbcOrderRepository.class);
+        orderStatistics = new OrderStatistics(userOrderStatsRepository, jdbcOrderRepository);
+        testUser = new User();
+        testUser.setId(345L);
+        testUser.setUsername("testuser");
+    }
+
+    @Test
+    public void givenRowCreatedByConcurrentOrder_whenOrderPlaced_thenAddToThatRow() {
+        // given
+        UserOrder order = new UserOrder();
+        order.setId(678L);
+        order.setUser(testUser);
+        order.setTotalCents(599);
+        order.setCreatedAt(Instant.now());
+        given(userOrderStatsRepository.addOrder(eq(345L), any(), any())).willReturn(0, 1);
+        given(jdbcOrderRepository.insertStatsIfAbsent(345L, 678L)).willReturn(false);
+
+        // when
+        orderStatistics.orderPlaced(order);
+
+        // then
+        verify(userOrderStatsRepository, times(2)).addOrder(eq(345L), any(), any());
+        verify(userOrderStatsRepository, never()).save(any(UserOrderStats.class));
+    }
+
+    @Test
+    public void givenNoRow_whenGetStats_thenComputeWithoutWriting() {
+        // given
+        UserOrderStats computed = new UserOrderStats();
+        computed.setUserId(345L);
+        computed.setOrderCount(3);
+        given(userOrderStatsRepository.findById(345L)).willReturn(Optional.empty());
+        given(jdbcOrderRepository.sumOrders(345L, null)).willReturn(computed);
+
+        // when
+        UserOrderStats stats = orderStatistics.getStats(testUser);
+
+        // then
+        Assertions.assertEquals(3, stats.getOrderCount());
+        verify(userOrderStatsRepository, never()).save(any(UserOrderStats.class));
+        verify(jdbcOrderRepository, never()).insertStatsIfAbsent(anyLong(), any());
+    }
+}
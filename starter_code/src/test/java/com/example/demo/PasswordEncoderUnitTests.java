@@ -0,0 +1,125 @@
+package com.example.demo;
+
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.security.CalibratedBCryptPasswordEncoder;
+import com.example.demo.services.UserAccounts;
+import com.example.demo.services.UserCache;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class PasswordEncoderUnitTests {
+
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Autowired
+    private UserAccounts userAccounts;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private CalibratedBCryptPasswordEncoder bCryptPasswordEncoder;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void givenHashWithLowerStrength_whenUpgradeEncoding_thenRequireRehash() {
+        // given
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(6);
+
+        // when / then
+        Assertions.assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("testpassword")));
+        Assertions.assertFalse(encoder.upgradeEncoding(new BCryptPasswordEncoder(7).encode("testpassword")));
+        Assertions.assertFalse(encoder.upgradeEncoding(encoder.encode("testpassword")));
+        Assertions.assertFalse(encoder.upgradeEncoding("not a bcrypt hash"));
+    }
+
+    @Test
+    public void whenCalibrate_thenStayWithinBounds() {
+        // when
+        int strength = CalibratedBCryptPasswordEncoder.calibrate(50, 5, 9);
+
+        // then
+        Assertions.assertTrue(strength >= 5 && strength <= 9, "strength " + strength);
+        Assertions.assertEquals(5, CalibratedBCryptPasswordEncoder.calibrate(0, 5, 9));
+    }
+
+    @Test
+    public void givenOutdatedHash_whenLogin_thenStoreRehashedPassword() {
+        // given
+        String username = "rehash-" + UUID.randomUUID();
+        userAccounts.createUser(username, new BCryptPasswordEncoder(4).encode("testpassword"));
+        userCache.findByUsername(username);
+
+        // when
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, "testpassword"));
+
+        // then
+        String stored = userRepository.findByUsername(username).getPassword();
+        Assertions.assertTrue(stored.startsWith(String.format("$2a$%02d$", bCryptPasswordEncoder.getStrength())), stored);
+        Assertions.assertTrue(bCryptPasswordEncoder.matches("testpassword", stored));
+        Assertions.assertEquals(stored, userCache.findByUsername(username).getPassword());
+    }
+
+    @Test
+    public void givenCurrentHash_whenLogin_thenKeepStoredPassword() {
+        // given
+        String username = "rehash-" + UUID.randomUUID();
+        String hash = bCryptPasswordEncoder.encode("testpassword");
+        userAccounts.createUser(username, hash);
+
+        // when
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, "testpassword"));
+
+        // then
+        Assertions.assertEquals(hash, userRepository.findByUsername(username).getPassword());
+    }
+
+    @Test
+    public void givenLookupBeforeCommit_whenChangePassword_thenCacheNewPassword() throws Exception {
+        // given
+        String username = "change-" + UUID.randomUUID();
+        userAccounts.createUser(username, bCryptPasswordEncoder.encode("testpassword"));
+        String newHash = bCryptPasswordEncoder.encode("newtestpassword");
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+
+        // when
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                userAccounts.changePassword(username, newHash);
+                try {
+                    // reads the committed row, which still holds the old password
+                    reader.submit(() -> userCache.findByUsername(username)).get(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } finally {
+            reader.shutdownNow();
+        }
+
+        // then
+        Assertions.assertEquals(newHash, userCache.findByUsername(username).getPassword());
+        Assertions.assertEquals(1, userCache.findByUsername(username).getTokenVersion());
+    }
+}
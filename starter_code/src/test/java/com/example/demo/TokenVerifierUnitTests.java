@@ -0,0 +1,118 @@
+package com.example.demo;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static org.mockito.Mockito.mock;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.repositories.RevokedTokenRepository;
+import com.example.demo.security.JWTAuthenticationFilter;
+import com.example.demo.security.SecurityConstants;
+import com.example.demo.security.TokenRevocations;
+import com.example.demo.security.TokenVerifier;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class TokenVerifierUnitTests {
+
+    @Test
+    public void givenVerifiedToken_whenVerifyAgain_thenAnswerFromCache() {
+        // given
+        CacheRegistry cacheRegistry = new CacheRegistry();
+        TokenVerifier tokenVerifier = new TokenVerifier(cacheRegistry, getTokenRevocations(), 100, 300);
+        String token = JWTAuthenticationFilter.createToken("testuser");
+        Assertions.assertEquals("testuser", tokenVerifier.verify(token));
+
+        // when
+        String subject = tokenVerifier.verify(token);
+
+        // then
+        Assertions.assertEquals("testuser", subject);
+        Assertions.assertEquals(1, cacheRegistry.stats().get(0).getHits());
+    }
+
+    @Test
+    public void givenTamperedToken_whenVerify_thenReject() {
+        // given
+        TokenVerifier tokenVerifier = new TokenVerifier(new CacheRegistry(), getTokenRevocations(), 100, 300);
+        String token = JWT.create()
+                .withSubject("testuser")
+                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.ACCESS_TOKEN_EXPIRATION_TIME))
+                .sign(HMAC512("someotherkey".getBytes()));
+
+        // when / then
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verify(token));
+    }
+
+    @Test
+    public void givenExpiredToken_whenVerify_thenReject() {
+        // given
+        TokenVerifier tokenVerifier = new TokenVerifier(new CacheRegistry(), getTokenRevocations(), 100, 300);
+        String token = JWT.create()
+                .withSubject("testuser")
+                .withExpiresAt(new Date(System.currentTimeMillis() - 1000))
+                .sign(HMAC512(SecurityConstants.SECRET.getBytes()));
+
+        // when / then
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verify(token));
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verify(token));
+    }
+
+    @Test
+    public void givenRefreshToken_whenVerifyAsAccessToken_thenReject() {
+        // given
+        TokenVerifier tokenVerifier = new TokenVerifier(new CacheRegistry(), getTokenRevocations(), 100, 300);
+        String refreshToken = JWTAuthenticationFilter.createRefreshToken("testuser");
+
+        // when / then
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verify(refreshToken));
+        Assertions.assertEquals("testuser", tokenVerifier.verifyRefreshToken(refreshToken));
+        Assertions.assertThrows(JWTVerificationException.class,
+                () -> tokenVerifier.verifyRefreshToken(JWTAuthenticationFilter.createToken("testuser")));
+    }
+
+    @Test
+    public void givenRevokedToken_whenVerify_thenReject() {
+        // given
+        TokenRevocations tokenRevocations = getTokenRevocations();
+        TokenVerifier tokenVerifier = new TokenVerifier(new CacheRegistry(), tokenRevocations, 100, 300);
+        String token = JWTAuthenticationFilter.createToken("testuser");
+        String otherToken = JWTAuthenticationFilter.createToken("testuser");
+        Assertions.assertEquals("testuser", tokenVerifier.verify(token));
+
+        // when
+        tokenVerifier.revoke(token);
+
+        // then
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verify(token));
+        Assertions.assertEquals("testuser", tokenVerifier.verify(otherToken));
+    }
+
+    @Test
+    public void givenAllTokensOfUserRevoked_whenVerify_thenRejectOnlyOlderVersions() {
+        // given
+        TokenRevocations tokenRevocations = getTokenRevocations();
+        TokenVerifier tokenVerifier = new TokenVerifier(new CacheRegistry(), tokenRevocations, 100, 300);
+        String oldToken = JWTAuthenticationFilter.createToken("testuser");
+        String oldRefreshToken = JWTAuthenticationFilter.createRefreshToken("testuser");
+        String otherUsersToken = JWTAuthenticationFilter.createToken("otheruser");
+        Assertions.assertEquals("testuser", tokenVerifier.verify(oldToken));
+
+        // when
+        tokenRevocations.revokeAllTokens("testuser", 1);
+
+        // then
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verify(oldToken));
+        Assertions.assertThrows(JWTVerificationException.class, () -> tokenVerifier.verifyRefreshToken(oldRefreshToken));
+        Assertions.assertEquals("testuser",
+                tokenVerifier.verify(JWTAuthenticationFilter.createToken("testuser", Collections.emptyList(), 1)));
+        Assertions.assertEquals("otheruser", tokenVerifier.verify(otherUsersToken));
+    }
+
+    private TokenRevocations getTokenRevocations() {
+        return new TokenRevocations(mock(RevokedTokenRepository.class), 300);
+    }
+}
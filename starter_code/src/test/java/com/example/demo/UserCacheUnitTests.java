@@ -0,0 +1,68 @@
+package com.example.demo;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.example.demo.cache.CacheRegistry;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.services.UserCache;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class UserCacheUnitTests {
+
+    @Test
+    public void givenCachedUser_whenFindByUsername_thenReturnCopyPerLookup() {
+        // given
+        UserRepository userRepository = mock(UserRepository.class);
+        UserCache userCache = new UserCache(userRepository, new CacheRegistry(), 100, 300);
+        given(userRepository.findByUsername("testuser")).willReturn(getTestUser());
+        userCache.findByUsername("testuser");
+
+        // when
+        User first = userCache.findByUsername("testuser");
+        User second = userCache.findByUsername("testuser");
+
+        // then
+        verify(userRepository, times(1)).findByUsername("testuser");
+        Assertions.assertNotSame(first, second);
+        Assertions.assertNotSame(first.getCart(), second.getCart());
+        Assertions.assertEquals(345L, first.getId());
+        Assertions.assertEquals(12L, first.getCart().getId());
+        Assertions.assertTrue(first.getCart().getLines().isEmpty());
+    }
+
+    @Test
+    public void givenUserChangedWhileLoading_whenFindByUsername_thenDoNotCacheStaleUser() {
+        // given
+        UserRepository userRepository = mock(UserRepository.class);
+        UserCache userCache = new UserCache(userRepository, new CacheRegistry(), 100, 300);
+        User testUser = getTestUser();
+        given(userRepository.findByUsername("testuser")).willAnswer(invocation -> {
+            userCache.userChanged(testUser);
+            return testUser;
+        });
+
+        // when
+        userCache.findByUsername("testuser");
+        userCache.findByUsername("testuser");
+
+        // then
+        verify(userRepository, times(2)).findByUsername("testuser");
+    }
+
+    private User getTestUser() {
+        Cart cart = new Cart();
+        cart.setId(12L);
+        User testUser = new User();
+        testUser.setId(345L);
+        testUser.setUsername("testuser");
+        testUser.setPassword("not-a-real-hash");
+        testUser.setCart(cart);
+        return testUser;
+    }
+}
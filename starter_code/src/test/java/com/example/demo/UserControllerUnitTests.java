@@ -1,18 +1,38 @@
 package com.example.demo;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.BulkCreateUsersRequest;
+import com.example.demo.model.requests.ChangePasswordRequest;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.responses.ProvisioningJob;
+import com.example.demo.model.responses.ProvisioningReport;
 import com.example.demo.security.JWTAuthenticationFilter;
+import com.example.demo.security.PasswordHashingExecutor;
+import com.example.demo.security.SecurityConstants;
+import com.example.demo.services.UserCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
 import org.junit.runner.RunWith;
@@ -21,7 +41,11 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
@@ -43,6 +67,20 @@ public class UserControllerUnitTests {
     @MockBean
     private CartRepository cartRepository;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    @SpyBean
+    private PasswordHashingExecutor passwordHashingExecutor;
+
+    @Before
+    public void setup() {
+        userCache.clear();
+    }
+
     @Test
     public void givenUser_whenGetUsername_thenReturnCorrectUser() throws Exception {
         // given
@@ -65,6 +103,31 @@ public class UserControllerUnitTests {
    }
 
 
+    @Test
+    public void givenCachedUser_whenGetUsernameAgain_thenSkipRepository() throws Exception {
+        // given
+        User testUser = getTestUser();
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        for (int i = 0; i < 3; i++) {
+            mvc.perform(get("/api/user/" + testUser.getUsername())
+                    .header("Authorization", "Bearer " + jwtToken)
+                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk());
+        }
+
+        // then
+        verify(userRepository, times(1)).findByUsername(testUser.getUsername());
+        mvc.perform(get("/api/user/id/" + testUser.getId())
+                .header("Authorization", "Bearer " + jwtToken)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        verify(userRepository, times(0)).findById(testUser.getId());
+    }
+
     @Test
     public void givenUser_whenGetUserId_thenReturnCorrectUser() throws Exception {
         // given
@@ -98,6 +161,9 @@ public class UserControllerUnitTests {
         MvcResult mvcResult = mvc.perform(post("/api/user/create")
                 .content(requestString)
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvcResult = mvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andReturn();
         User returnedUser = mvcResultToUser(mvcResult);
@@ -106,6 +172,63 @@ public class UserControllerUnitTests {
         Assertions.assertEquals(testUser.getUsername(), returnedUser.getUsername());
     }
 
+    @Test
+    public void givenTakenUsername_whenCreateUser_thenReturnConflict() throws Exception {
+        // given
+        CreateUserRequest testCreateUserRequest = getTestCreateUserRequest();
+        String requestString = objectMapper.writeValueAsString(testCreateUserRequest);
+
+        given(userRepository.save(any(User.class))).willThrow(new DataIntegrityViolationException("username already exists"));
+
+        // when / then
+        MvcResult mvcResult = mvc.perform(post("/api/user/create")
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void givenCorrectPassword_whenLogin_thenReturnTokens() throws Exception {
+        // given
+        User testUser = getTestUser();
+        testUser.setUsername("testuser-" + UUID.randomUUID());
+        testUser.setPassword(bCryptPasswordEncoder.encode("testPassword"));
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        MvcResult mvcResult = login(testUser.getUsername(), "testPassword");
+
+        // then
+        Assertions.assertEquals(200, mvcResult.getResponse().getStatus());
+        String accessToken = mvcResult.getResponse().getHeader("Authorization");
+        Assertions.assertNotNull(accessToken);
+        Assertions.assertNotNull(mvcResult.getResponse().getHeader("Refresh-Token"));
+        mvc.perform(get("/api/user/"+testUser.getUsername())
+                .header("Authorization", accessToken))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void givenWrongPassword_whenLogin_thenReturnUnauthorized() throws Exception {
+        // given
+        User testUser = getTestUser();
+        testUser.setUsername("testuser-" + UUID.randomUUID());
+        testUser.setPassword(bCryptPasswordEncoder.encode("testPassword"));
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        MvcResult mvcResult = login(testUser.getUsername(), "wrongPassword");
+
+        // then
+        Assertions.assertEquals(401, mvcResult.getResponse().getStatus());
+        Assertions.assertNull(mvcResult.getResponse().getHeader("Authorization"));
+    }
+
     @Test
     public void givenPasswordTooShort_whenCreateUser_thenReturnBadRequest() throws Exception {
         // given
@@ -116,9 +239,12 @@ public class UserControllerUnitTests {
         String requestString = objectMapper.writeValueAsString(testCreateUserRequest);
 
         // when / then
-        mvc.perform(post("/api/user/create")
+        MvcResult mvcResult = mvc.perform(post("/api/user/create")
                 .content(requestString)
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isBadRequest());
     }
 
@@ -131,12 +257,196 @@ public class UserControllerUnitTests {
         String requestString = objectMapper.writeValueAsString(testCreateUserRequest);
 
         // when / then
-        mvc.perform(post("/api/user/create")
+        MvcResult mvcResult = mvc.perform(post("/api/user/create")
                 .content(requestString)
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void givenHashingPoolSaturated_whenCreateUser_thenReturnServiceUnavailable() throws Exception {
+        // given
+        CreateUserRequest testCreateUserRequest = getTestCreateUserRequest();
+        String requestString = objectMapper.writeValueAsString(testCreateUserRequest);
+
+        willThrow(new RejectedExecutionException()).given(passwordHashingExecutor).submit(any());
+
+        // when / then
+        MvcResult mvcResult = mvc.perform(post("/api/user/create")
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        verify(userRepository, times(0)).save(any(User.class));
+    }
+
+    @Test
+    public void givenBulkRequest_whenCreateUsers_thenReportEveryRow() throws Exception {
+        // given
+        String username = "bulkuser-" + UUID.randomUUID();
+        CreateUserRequest valid = getTestCreateUserRequest();
+        valid.setUsername(username);
+        CreateUserRequest tooShort = getTestCreateUserRequest();
+        tooShort.setUsername(username + "-short");
+        tooShort.setPassword("short");
+        tooShort.setConfirmPassword("short");
+        CreateUserRequest duplicate = getTestCreateUserRequest();
+        duplicate.setUsername(username);
+        BulkCreateUsersRequest bulkRequest = new BulkCreateUsersRequest();
+        bulkRequest.setUsers(Arrays.asList(valid, tooShort, duplicate));
+        String jwtToken = getAdminToken();
+        String requestString = objectMapper.writeValueAsString(bulkRequest);
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/user/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(requestString)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists(HttpHeaders.LOCATION))
+                .andReturn();
+        ProvisioningReport report = awaitProvisioningReport(mvcResult, jwtToken);
+
+        // then
+        Assertions.assertEquals(1, report.getCreated());
+        Assertions.assertEquals(2, report.getRejected());
+        Assertions.assertNotNull(report.getResults().get(0).getId());
+        Assertions.assertNotNull(report.getResults().get(1).getError());
+        Assertions.assertNotNull(report.getResults().get(2).getError());
+
+        // and when the same user is provisioned again
+        bulkRequest.setUsers(Collections.singletonList(valid));
+        mvcResult = mvc.perform(post("/api/user/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(objectMapper.writeValueAsString(bulkRequest))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isAccepted())
+                .andReturn();
+        report = awaitProvisioningReport(mvcResult, jwtToken);
+        Assertions.assertEquals(0, report.getCreated());
+        Assertions.assertEquals("username already exists", report.getResults().get(0).getError());
+    }
+
+    @Test
+    public void givenNonAdmin_whenCreateUsers_thenReturnForbidden() throws Exception {
+        // given
+        BulkCreateUsersRequest bulkRequest = new BulkCreateUsersRequest();
+        bulkRequest.setUsers(Collections.singletonList(getTestCreateUserRequest()));
+        String jwtToken = JWTAuthenticationFilter.createToken("testuser");
+
+        // when / then
+        mvc.perform(post("/api/user/bulk")
+                .header("Authorization", "Bearer " + jwtToken)
+                .content(objectMapper.writeValueAsString(bulkRequest))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void givenRefreshToken_whenRefresh_thenReturnUsableAccessToken() throws Exception {
+        // given
+        User testUser = getTestUser();
+        String refreshToken = JWTAuthenticationFilter.createRefreshToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/user/refresh")
+                .header("Refresh-Token", refreshToken))
+                .andExpect(status().isOk())
+                .andReturn();
+        String accessToken = mvcResult.getResponse().getHeader("Authorization");
+
+        // then
+        Assertions.assertNotNull(accessToken);
+        mvc.perform(get("/api/user/"+testUser.getUsername())
+                .header("Authorization", accessToken))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void givenAccessToken_whenRefresh_thenReturnUnauthorized() throws Exception {
+        // given
+        String accessToken = JWTAuthenticationFilter.createToken("testuser");
+
+        // when / then
+        mvc.perform(post("/api/user/refresh")
+                .header("Refresh-Token", accessToken))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void givenLoggedOut_whenUseToken_thenReturnUnauthorized() throws Exception {
+        // given
+        User testUser = getTestUser();
+        testUser.setUsername("testuser-" + UUID.randomUUID());
+        String jwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String otherJwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+
+        // when
+        mvc.perform(post("/api/user/logout")
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isOk());
+
+        // then
+        mvc.perform(get("/api/user/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + jwtToken))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/api/user/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + otherJwtToken))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void givenChangedPassword_whenUseOldToken_thenReturnUnauthorized() throws Exception {
+        // given
+        User testUser = getTestUser();
+        testUser.setUsername("testuser-" + UUID.randomUUID());
+        testUser.setPassword(bCryptPasswordEncoder.encode("testPassword"));
+        String oldJwtToken = JWTAuthenticationFilter.createToken(testUser.getUsername());
+        String oldRefreshToken = JWTAuthenticationFilter.createRefreshToken(testUser.getUsername());
+        ChangePasswordRequest changePasswordRequest = new ChangePasswordRequest();
+        changePasswordRequest.setCurrentPassword("testPassword");
+        changePasswordRequest.setNewPassword("newTestPassword");
+        changePasswordRequest.setConfirmPassword("newTestPassword");
+
+        given(userRepository.findByUsername(testUser.getUsername())).willReturn(testUser);
+        given(userRepository.changePassword(eq(testUser.getUsername()), any(String.class))).willReturn(1);
+        given(userRepository.findTokenVersionByUsername(testUser.getUsername())).willReturn(1);
+
+        // when
+        MvcResult mvcResult = mvc.perform(post("/api/user/change-password")
+                .header("Authorization", "Bearer " + oldJwtToken)
+                .content(objectMapper.writeValueAsString(changePasswordRequest))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvcResult = mvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andReturn();
+        String newJwtToken = mvcResult.getResponse().getHeader("Authorization");
+
+        // then
+        verify(userRepository, times(1)).changePassword(eq(testUser.getUsername()), any(String.class));
+        mvc.perform(get("/api/user/"+testUser.getUsername())
+                .header("Authorization", "Bearer " + oldJwtToken))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(post(SecurityConstants.REFRESH_URL)
+                .header(SecurityConstants.REFRESH_HEADER_STRING, oldRefreshToken))
+                .andExpect(status().isUnauthorized());
+        mvc.perform(get("/api/user/"+testUser.getUsername())
+                .header("Authorization", newJwtToken))
+                .andExpect(status().isOk());
+    }
+
     @Test
     public void givenNoJwt_whenGetUsername_thenReturnUnauthorized() throws Exception {
         // when / then
@@ -170,6 +480,47 @@ public class UserControllerUnitTests {
         return testCreateUserRequest;
     }
 
+    private String getAdminToken() {
+        return JWTAuthenticationFilter.createToken("admin", Collections.singletonList(SecurityConstants.ADMIN_AUTHORITY));
+    }
+
+    /**
+     * Polls the provisioning job at the Location returned until it has completed.
+     */
+    private ProvisioningReport awaitProvisioningReport(MvcResult submitted, String jwtToken) throws Exception {
+        String location = submitted.getResponse().getHeader(HttpHeaders.LOCATION);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            MvcResult mvcResult = mvc.perform(get(location)
+                    .header("Authorization", "Bearer " + jwtToken))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            ProvisioningJob job = objectMapper.readValue(mvcResult.getResponse().getContentAsString(), ProvisioningJob.class);
+            if (job.getStatus() == ProvisioningJob.Status.COMPLETED) {
+                return job.getReport();
+            }
+            Assertions.assertNotEquals(ProvisioningJob.Status.FAILED, job.getStatus());
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "provisioning job did not complete");
+            Thread.sleep(50);
+        }
+    }
+
+    /**
+     * Logs in and waits for the filter to complete the response on the password hashing pool.
+     */
+    private MvcResult login(String username, String password) throws Exception {
+        MvcResult mvcResult = mvc.perform(post("/login")
+                .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andReturn();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (mvcResult.getRequest().isAsyncStarted()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "login did not complete");
+            Thread.sleep(10);
+        }
+        return mvcResult;
+    }
+
    private User mvcResultToUser(MvcResult result) throws Exception {
        String contentAsString = result.getResponse().getContentAsString();
        return objectMapper.readValue(contentAsString, User.class);
@@ -0,0 +1,91 @@
+package com.example.demo.benchmarks;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares cart total maintenance with per-unit BigDecimal arithmetic (the former Cart
+ * implementation) against long cents arithmetic. Run the main method; the GC profiler's
+ * gc.alloc.rate.norm column shows the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartTotalBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int quantity;
+
+    private Item item;
+    private BigDecimal price;
+    private long priceCents;
+    private BigDecimal bigDecimalTotal;
+    private long centsTotal;
+    private Cart cart;
+
+    @Setup
+    public void setup() {
+        item = new Item();
+        item.setId(1L);
+        item.setName("Benchmark Widget");
+        item.setDescription("A widget for benchmarking");
+        item.setPrice(new BigDecimal("5.99"));
+        price = item.getPrice();
+        priceCents = item.getPriceCents();
+        bigDecimalTotal = BigDecimal.ZERO;
+        centsTotal = 0;
+        cart = new Cart();
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalAddThenRemove() {
+        for (int i = 0; i < quantity; i++) {
+            bigDecimalTotal = bigDecimalTotal.add(price);
+        }
+        for (int i = 0; i < quantity; i++) {
+            bigDecimalTotal = bigDecimalTotal.subtract(price);
+        }
+        return bigDecimalTotal;
+    }
+
+    @Benchmark
+    public long centsAddThenRemove() {
+        centsTotal += priceCents * quantity;
+        centsTotal -= priceCents * quantity;
+        return centsTotal;
+    }
+
+    @Benchmark
+    public long cartAddThenRemove() {
+        cart.addItem(item, quantity);
+        cart.removeItem(item, quantity);
+        return cart.getTotalCents();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CartTotalBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}